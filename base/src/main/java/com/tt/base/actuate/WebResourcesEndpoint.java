@@ -0,0 +1,132 @@
+package com.tt.base.actuate;
+
+import com.tt.base.ark.BizNames;
+import org.apache.catalina.webresources.JarWarResourceSet;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Lists the resource sets that serve the nested JARs of each biz, with the
+ * size of their entry tables and the handles they hold:
+ * {@code GET /actuator/webresources} returns them grouped by biz.
+ * <p>
+ * The endpoint is read only; indexes are rebuilt through
+ * {@link WebResourcesRebuildEndpoint}, which is only exposed over JMX.
+ */
+@Component
+@Endpoint(id = "webresources")
+public class WebResourcesEndpoint {
+
+    @ReadOperation
+    public WebResourcesDescriptor webResources() {
+        Map<String, List<ResourceSetDescriptor>> bizs = new TreeMap<>();
+        for (JarWarResourceSet resourceSet : JarWarResourceSet.getInstances()) {
+            bizs.computeIfAbsent(getBizName(resourceSet), (biz) -> new ArrayList<>())
+                    .add(new ResourceSetDescriptor(resourceSet));
+        }
+        for (List<ResourceSetDescriptor> resourceSets : bizs.values()) {
+            resourceSets.sort(Comparator.comparing(ResourceSetDescriptor::getArchivePath)
+                    .thenComparing(ResourceSetDescriptor::getMountPoint));
+        }
+        return new WebResourcesDescriptor(bizs);
+    }
+
+    static String getBizName(JarWarResourceSet resourceSet) {
+        return BizNames.getBizName(resourceSet.getBizKey());
+    }
+
+    public static final class WebResourcesDescriptor {
+
+        private final Map<String, List<ResourceSetDescriptor>> bizs;
+
+        WebResourcesDescriptor(Map<String, List<ResourceSetDescriptor>> bizs) {
+            this.bizs = bizs;
+        }
+
+        public Map<String, List<ResourceSetDescriptor>> getBizs() {
+            return bizs;
+        }
+    }
+
+    public static final class ResourceSetDescriptor {
+
+        private final String mountPoint;
+        private final String archiveFile;
+        private final String archivePath;
+        private final int entryCount;
+        private final long estimatedHeapSize;
+        private final Double cacheHitRatio;
+        private final int openHandles;
+        private final Instant lastBuildTime;
+        private final Double lastBuildMillis;
+
+        ResourceSetDescriptor(JarWarResourceSet resourceSet) {
+            this.mountPoint = resourceSet.getMountPoint();
+            this.archiveFile = resourceSet.getArchiveFile();
+            this.archivePath = resourceSet.getArchivePath();
+            this.entryCount = resourceSet.getEntryCount();
+            this.estimatedHeapSize = resourceSet.getEstimatedHeapSize();
+            long hits = resourceSet.getCacheHits();
+            long accesses = hits + resourceSet.getCacheMisses();
+            // 未启用内容缓存或尚无读取时没有命中率
+            this.cacheHitRatio = accesses == 0 ? null : (double) hits / accesses;
+            this.openHandles = resourceSet.getOpenHandles();
+            long buildTime = resourceSet.getLastBuildTime();
+            this.lastBuildTime = buildTime < 0 ? null : Instant.ofEpochMilli(buildTime);
+            long buildNanos = resourceSet.getLastBuildNanos();
+            this.lastBuildMillis = buildNanos < 0 ? null : buildNanos / 1_000_000.0;
+        }
+
+        public String getMountPoint() {
+            return mountPoint;
+        }
+
+        public String getArchiveFile() {
+            return archiveFile;
+        }
+
+        public String getArchivePath() {
+            return archivePath;
+        }
+
+        /**
+         * @return the number of entries, or -1 if the entry table has not
+         *         been built yet
+         */
+        public int getEntryCount() {
+            return entryCount;
+        }
+
+        public long getEstimatedHeapSize() {
+            return estimatedHeapSize;
+        }
+
+        public Double getCacheHitRatio() {
+            return cacheHitRatio;
+        }
+
+        /**
+         * @return the number of users of the shared handle of the archive
+         *         that contains the nested JAR, or -1 if it is not open
+         */
+        public int getOpenHandles() {
+            return openHandles;
+        }
+
+        public Instant getLastBuildTime() {
+            return lastBuildTime;
+        }
+
+        public Double getLastBuildMillis() {
+            return lastBuildMillis;
+        }
+    }
+}
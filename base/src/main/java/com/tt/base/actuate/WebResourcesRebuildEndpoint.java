@@ -0,0 +1,41 @@
+package com.tt.base.actuate;
+
+import com.tt.base.actuate.WebResourcesEndpoint.ResourceSetDescriptor;
+import org.apache.catalina.webresources.JarWarResourceSet;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.jmx.annotation.JmxEndpoint;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drops and rebuilds the index of the resource sets of a nested JAR, e.g.
+ * after it was found to be indexed slowly. Rebuilding is costly and can be
+ * triggered repeatedly, so the operation is only exposed over JMX, which
+ * requires {@code spring.jmx.enabled=true}, never over HTTP.
+ */
+@Component
+@JmxEndpoint(id = "webresourcesrebuild")
+public class WebResourcesRebuildEndpoint {
+
+    /**
+     * @param archivePath   The path of the nested JAR, as listed by
+     *                          {@link WebResourcesEndpoint}
+     * @param biz           The biz to restrict the rebuild to, or
+     *                          {@code null} for every biz
+     */
+    @WriteOperation
+    public List<ResourceSetDescriptor> rebuild(String archivePath, @Nullable String biz) {
+        List<ResourceSetDescriptor> rebuilt = new ArrayList<>();
+        for (JarWarResourceSet resourceSet : JarWarResourceSet.getInstances()) {
+            if (resourceSet.getArchivePath().equals(archivePath) &&
+                    (biz == null || biz.equals(WebResourcesEndpoint.getBizName(resourceSet)))) {
+                resourceSet.rebuildIndex();
+                rebuilt.add(new ResourceSetDescriptor(resourceSet));
+            }
+        }
+        return rebuilt;
+    }
+}
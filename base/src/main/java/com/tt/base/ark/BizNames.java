@@ -0,0 +1,90 @@
+package com.tt.base.ark;
+
+import com.alipay.sofa.ark.api.ArkClient;
+import com.alipay.sofa.ark.spi.model.Biz;
+import com.alipay.sofa.ark.spi.service.biz.BizManagerService;
+import com.tt.nested.NestedJarFilePool;
+import com.tt.nested.NestedReleaseRegistry;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the biz an archive belongs to from its handle key, as returned by
+ * {@link NestedJarFilePool#getKey(String, String)}. Archives that belong to
+ * no installed biz are reported as {@value #BASE}, without a version.
+ */
+public final class BizNames {
+
+    public static final String BASE = "base";
+
+    private static final BizInfo BASE_INFO = new BizInfo(BASE, null);
+
+    // 句柄键 -> 模块名及版本，避免每次都遍历模块列表，模块卸载时清除
+    private static final Map<String, BizInfo> bizInfos = new ConcurrentHashMap<>();
+
+    private BizNames() {
+    }
+
+    /**
+     * @param key   The handle key of an archive or of an archive within it
+     *
+     * @return the name of the biz that contains the archive
+     */
+    public static String getBizName(String key) {
+        return bizInfos.computeIfAbsent(key, BizNames::findBiz).name;
+    }
+
+    /**
+     * @param key   The handle key of an archive or of an archive within it
+     *
+     * @return the version of the biz that contains the archive, or
+     *         {@code null} if it belongs to the base
+     */
+    public static String getBizVersion(String key) {
+        return bizInfos.computeIfAbsent(key, BizNames::findBiz).version;
+    }
+
+    /**
+     * Forgets the biz of the archives of an uninstalled biz, so that a biz
+     * deployed later at the same location is looked up again.
+     *
+     * @param bizKey    The handle key of the biz archive
+     */
+    public static void forget(String bizKey) {
+        bizInfos.keySet().removeIf((key) -> NestedReleaseRegistry.isWithin(key, bizKey));
+    }
+
+    /*
+     * 句柄键以所属模块 jar 的键为前缀，取前缀最长的模块；不属于任何模块的归为基座
+     */
+    private static BizInfo findBiz(String key) {
+        BizManagerService bizManagerService = ArkClient.getBizManagerService();
+        if (bizManagerService == null) {
+            return BASE_INFO;
+        }
+        BizInfo bizInfo = BASE_INFO;
+        int longest = -1;
+        for (Biz biz : bizManagerService.getBizInOrder()) {
+            URL bizUrl = biz.getBizUrl();
+            String bizKey = bizUrl == null ? null : NestedJarFilePool.getKey(bizUrl);
+            if (bizKey != null && bizKey.length() > longest && NestedReleaseRegistry.isWithin(key, bizKey)) {
+                bizInfo = new BizInfo(biz.getBizName(), biz.getBizVersion());
+                longest = bizKey.length();
+            }
+        }
+        return bizInfo;
+    }
+
+    private static final class BizInfo {
+
+        private final String name;
+        private final String version;
+
+        BizInfo(String name, String version) {
+            this.name = name;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.tt.base.ark;
+
+import com.alipay.sofa.ark.api.ArkClient;
+import com.alipay.sofa.ark.spi.event.biz.AfterBizStopEvent;
+import com.alipay.sofa.ark.spi.model.Biz;
+import com.alipay.sofa.ark.spi.service.event.EventAdminService;
+import com.alipay.sofa.ark.spi.service.event.EventHandler;
+import com.tt.nested.NestedJarFilePool;
+import com.tt.nested.NestedReleaseRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.URL;
+
+/**
+ * 模块卸载后，释放该模块 jar 在共享句柄池中的句柄、资源内容缓存、资源集索引、资源 jar 探测结果及 jsp 编译缓存中的 jar 摘要，并清除模块名缓存
+ */
+@Component
+public class NestedResourceReleaseHandler implements EventHandler<AfterBizStopEvent> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NestedResourceReleaseHandler.class);
+
+    @PostConstruct
+    public void register() {
+        EventAdminService eventAdminService = ArkClient.getEventAdminService();
+        // 非 ark 方式启动时没有事件服务
+        if (eventAdminService != null) {
+            eventAdminService.register(this);
+        }
+    }
+
+    @PreDestroy
+    public void unregister() {
+        EventAdminService eventAdminService = ArkClient.getEventAdminService();
+        if (eventAdminService != null) {
+            eventAdminService.unRegister(this);
+        }
+    }
+
+    @Override
+    public void handleEvent(AfterBizStopEvent event) {
+        Biz biz = event.getSource();
+        URL bizUrl = biz.getBizUrl();
+        String key = bizUrl == null ? null : NestedJarFilePool.getKey(bizUrl);
+        if (key == null) {
+            return;
+        }
+        // 句柄池、内容缓存、资源集索引、资源 jar 探测结果及 jar 摘要均已登记到 NestedReleaseRegistry
+        int released = NestedReleaseRegistry.releaseBiz(key);
+        BizNames.forget(key);
+        LOGGER.info("Released {} nested jar handles, indexes and cache entries of biz {}", released,
+                biz.getIdentity());
+    }
+
+    @Override
+    public int getPriority() {
+        return LOWEST_PRECEDENCE;
+    }
+}
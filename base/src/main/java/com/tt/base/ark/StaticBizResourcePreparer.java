@@ -0,0 +1,406 @@
+package com.tt.base.ark;
+
+import com.tt.nested.ArchiveSource;
+import com.tt.nested.FileArchiveSource;
+import com.tt.nested.JarEntryArchiveSource;
+import com.tt.nested.NestedArchiveResolver;
+import com.tt.nested.NestedJarFilePool;
+import com.tt.nested.NestedJarIndex;
+import com.tt.nested.NestedJarIndexRegistry;
+import com.tt.nested.NestedJarScanCache;
+import com.tt.nested.NestedReleaseRegistry;
+import com.tt.nested.ZipCentralDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.system.ApplicationHome;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Prepares the web resources of the bizs deployed statically with the base
+ * ({@value #STATIC_BIZ_PROPERTY}) in parallel while the base starts.
+ * <p>
+ * Ark installs the bizs packaged under {@value #BIZ_DIRECTORY} one after the
+ * other once the base context is refreshed, and every biz indexes its
+ * resource JARs and scans its JARs for TLDs on the deploying thread. This
+ * component does that work for all bizs up front, on a bounded pool, while
+ * the base context refreshes:
+ * <ul>
+ * <li>builds the shared index of every resource JAR, see
+ *     {@link NestedJarIndexRegistry}</li>
+ * <li>scans the JARs holding TLDs or web fragments into the shared
+ *     {@link NestedJarScanCache}</li>
+ * </ul>
+ * The deploy waits for the preparation, for at most
+ * {@value #TIMEOUT_PROPERTY} seconds, and then finds both ready, so that the
+ * startup of the base grows with its slowest biz rather than with the sum of
+ * all of them. The prepared indexes are held for each biz until it is
+ * uninstalled.
+ * <p>
+ * The pool runs at most {@value #THREADS_PROPERTY} tasks, the number of
+ * processors by default, and at most {@value #MAX_OPEN_FILES_PROPERTY}, 16
+ * by default, as every task keeps one file open. Disabled with
+ * {@value #ENABLED_PROPERTY} set to {@code false}.
+ */
+@Component
+@ConditionalOnProperty(name = StaticBizResourcePreparer.STATIC_BIZ_PROPERTY, havingValue = "true")
+public class StaticBizResourcePreparer implements ApplicationListener<ContextRefreshedEvent>, Ordered {
+
+    static final String STATIC_BIZ_PROPERTY = "sofa.ark.embed.static.biz.enable";
+
+    static final String ENABLED_PROPERTY = "koupleless.static-biz.prepare.enabled";
+
+    static final String THREADS_PROPERTY = "koupleless.static-biz.prepare.threads";
+
+    static final String MAX_OPEN_FILES_PROPERTY = "koupleless.static-biz.prepare.max-open-files";
+
+    static final String TIMEOUT_PROPERTY = "koupleless.static-biz.prepare.timeout-seconds";
+
+    static final String BIZ_DIRECTORY = "SOFA-ARK/biz/";
+
+    private static final String FAT_JAR_CLASSES = "BOOT-INF/classes/";
+
+    private static final byte[] RESOURCES_PREFIX = "META-INF/resources/".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] META_INF_PREFIX = "META-INF/".getBytes(StandardCharsets.UTF_8);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StaticBizResourcePreparer.class);
+
+    private final boolean enabled;
+
+    private final int threads;
+
+    private final long timeoutSeconds;
+
+    // 按模块 jar 的键记录预先获取的共享索引，模块卸载时释放
+    private final Map<String,List<PreparedJar>> prepared = new HashMap<>();
+
+    private final NestedReleaseRegistry.Releaser releaser = this::release;
+
+    private volatile ThreadPoolExecutor executor;
+
+    private volatile CompletableFuture<Void> preparation;
+
+    public StaticBizResourcePreparer(@Value("${" + ENABLED_PROPERTY + ":true}") boolean enabled,
+                                     @Value("${" + THREADS_PROPERTY + ":0}") int threads,
+                                     @Value("${" + MAX_OPEN_FILES_PROPERTY + ":16}") int maxOpenFiles,
+                                     @Value("${" + TIMEOUT_PROPERTY + ":120}") long timeoutSeconds) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        this.enabled = enabled;
+        this.threads = Math.max(1, Math.min(threads > 0 ? threads : processors, maxOpenFiles));
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        File source = new ApplicationHome(StaticBizResourcePreparer.class).getSource();
+        if (source == null) {
+            return;
+        }
+        try {
+            prepare(findBizs(source.toPath()));
+        } catch (IOException e) {
+            LOGGER.warn("Unable to find static bizs, their web resources are prepared on deploy", e);
+        }
+    }
+
+    private void prepare(List<BizArchive> bizs) {
+        if (bizs.isEmpty()) {
+            return;
+        }
+        NestedReleaseRegistry.register(releaser);
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                (runnable) -> {
+                    Thread thread = new Thread(runnable, "static-biz-prepare-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        long start = System.nanoTime();
+        CompletableFuture<?>[] tasks = bizs.stream().map(this::prepareBiz).toArray(CompletableFuture[]::new);
+        preparation = CompletableFuture.allOf(tasks).whenComplete((ignored, e) -> {
+            executor.shutdown();
+            LOGGER.info("Prepared web resources of {} static bizs in {} ms", bizs.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ThreadPoolExecutor executor = this.executor;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        NestedReleaseRegistry.unregister(releaser);
+        release("");
+    }
+
+    /**
+     * Waits for the preparation before Ark deploys the static bizs on the
+     * same event.
+     */
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        CompletableFuture<Void> preparation = this.preparation;
+        if (preparation == null || preparation.isDone()) {
+            return;
+        }
+        try {
+            preparation.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.warn("Preparation of static bizs did not finish within {} seconds, deploying them anyway",
+                    timeoutSeconds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // 各任务自行记录失败，不会到这里
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        return HIGHEST_PRECEDENCE;
+    }
+
+    /*
+     * 打包运行时模块 jar 位于基座 jar 的 BOOT-INF/classes/SOFA-ARK/biz/ 下，在 IDE 中运行时位于 classes 目录下
+     */
+    private static List<BizArchive> findBizs(Path base) throws IOException {
+        List<BizArchive> bizs = new ArrayList<>();
+        if (Files.isDirectory(base)) {
+            Path directory = base.resolve(BIZ_DIRECTORY);
+            if (Files.isDirectory(directory)) {
+                try (Stream<Path> files = Files.list(directory)) {
+                    for (Path file : files.filter((file) -> file.toString().endsWith(".jar"))
+                            .collect(Collectors.toList())) {
+                        bizs.add(new BizArchive(file, ""));
+                    }
+                }
+            }
+        } else if (Files.isRegularFile(base)) {
+            byte[] prefix = (FAT_JAR_CLASSES + BIZ_DIRECTORY).getBytes(StandardCharsets.UTF_8);
+            ZipCentralDirectory cen = ZipCentralDirectory.read(new FileArchiveSource(base, 0, Files.size(base)));
+            for (int record = cen.firstRecord(); record >= 0; record = cen.nextRecord(record)) {
+                if (cen.nameStartsWith(record, prefix)) {
+                    String name = cen.getName(record);
+                    if (name.endsWith(".jar")) {
+                        bizs.add(new BizArchive(base, name));
+                    }
+                }
+            }
+        }
+        return bizs;
+    }
+
+    private CompletableFuture<Void> prepareBiz(BizArchive biz) {
+        return CompletableFuture.supplyAsync(() -> openBiz(biz), executor).thenCompose((jars) -> {
+            CompletableFuture<?>[] tasks = jars.stream()
+                    .map((jar) -> CompletableFuture.runAsync(() -> prepareJar(biz, jar), executor))
+                    .toArray(CompletableFuture[]::new);
+            return CompletableFuture.allOf(tasks).whenComplete((ignored, e) -> biz.close());
+        });
+    }
+
+    /*
+     * 列出模块 jar 中的依赖 jar；各层均为 STORED 时按偏移量直接读取，否则通过共享句柄池读取
+     */
+    private static List<NestedJar> openBiz(BizArchive biz) {
+        List<NestedJar> jars = new ArrayList<>();
+        try {
+            FileArchiveSource container = NestedArchiveResolver.resolve(biz.file, biz.containerPath);
+            if (container != null) {
+                biz.container = container;
+                ZipCentralDirectory cen = ZipCentralDirectory.read(container);
+                for (int record = cen.firstRecord(); record >= 0; record = cen.nextRecord(record)) {
+                    String name = cen.getName(record);
+                    if (name.startsWith(NestedJarIndex.SIDECAR_PREFIX)) {
+                        biz.sidecars = true;
+                    } else if (name.endsWith(".jar") && cen.getMethod(record) == ZipEntry.STORED) {
+                        long dataOffset = ZipCentralDirectory.getDataOffset(container, cen.getLocalHeaderOffset(record));
+                        FileArchiveSource source = container.slice(dataOffset, cen.getSize(record), cen.getCrc(record));
+                        jars.add(new NestedJar(name, source.length(), source.getCrc(), source));
+                    }
+                }
+            } else {
+                JarFile jarFile = NestedJarFilePool.getInstance().acquire(biz.file.toString(), biz.containerPath);
+                biz.jarFile = jarFile;
+                for (JarEntry entry : Collections.list(jarFile.entries())) {
+                    if (entry.getName().endsWith(".jar")) {
+                        jars.add(new NestedJar(entry.getName(), entry.getSize(), entry.getCrc(),
+                                new JarEntryArchiveSource(jarFile, entry)));
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to read static biz {}, its web resources are prepared on deploy", biz, e);
+        }
+        return jars;
+    }
+
+    private void prepareJar(BizArchive biz, NestedJar jar) {
+        // 大小或 CRC 未知（如 JarFile 方式读取的条目）时既无法共享索引也无法命中扫描缓存，留待部署时处理
+        if (jar.size < 0 || jar.crc < 0) {
+            return;
+        }
+        try {
+            ZipCentralDirectory cen = ZipCentralDirectory.read(jar.source);
+            boolean resources = false;
+            boolean descriptors = false;
+            for (int record = cen.firstRecord(); record >= 0; record = cen.nextRecord(record)) {
+                if (cen.nameStartsWith(record, META_INF_PREFIX)) {
+                    resources |= cen.nameStartsWith(record, RESOURCES_PREFIX);
+                    descriptors |= NestedJarScanCache.isDescriptor(cen.getName(record));
+                }
+            }
+            if (resources) {
+                // 与 JarWarResourceSet 以相同的名称、大小及 CRC 获取，模块部署时直接命中
+                NestedJarIndexRegistry.getInstance().acquire(jar.name, jar.size, jar.crc,
+                        () -> loadIndex(biz, jar));
+                synchronized (prepared) {
+                    prepared.computeIfAbsent(biz.getKey(), (key) -> new ArrayList<>()).add(
+                            new PreparedJar(jar.name, jar.size, jar.crc));
+                }
+            }
+            NestedJarScanCache scanCache = NestedJarScanCache.getInstance();
+            if (descriptors && scanCache.isEnabled() && scanCache.get(jar.size, jar.crc) == null) {
+                try (JarInputStream jarIs = new JarInputStream(jar.source.openStream(0, jar.source.length()))) {
+                    scanCache.put(jar.size, jar.crc, NestedJarScanCache.ScannedJar.scan(jarIs));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // 准备失败不影响部署，部署时仍按原方式处理
+            LOGGER.warn("Unable to prepare {} of static biz {}", jar.name, biz, e);
+        }
+    }
+
+    private static NestedJarIndex loadIndex(BizArchive biz, NestedJar jar) throws IOException {
+        if (biz.container != null && biz.sidecars) {
+            NestedJarIndex index = NestedJarIndex.loadSidecar(biz.container, jar.name);
+            if (index != null) {
+                return index;
+            }
+        } else if (biz.jarFile != null) {
+            JarEntry sidecar = biz.jarFile.getJarEntry(NestedJarIndex.getSidecarName(jar.name));
+            if (sidecar != null) {
+                try (InputStream is = biz.jarFile.getInputStream(sidecar)) {
+                    NestedJarIndex index = NestedJarIndex.readSidecar(is, jar.size, jar.crc);
+                    if (index != null) {
+                        return index;
+                    }
+                }
+            }
+        }
+        return NestedJarIndex.buildWithManifest(jar.source);
+    }
+
+    /*
+     * 释放给定模块 jar（为空时为全部模块）的预先获取的索引
+     */
+    private int release(String bizKey) {
+        List<PreparedJar> released = new ArrayList<>();
+        synchronized (prepared) {
+            Iterator<Map.Entry<String,List<PreparedJar>>> iter = prepared.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry<String,List<PreparedJar>> entry = iter.next();
+                if (bizKey.isEmpty() || NestedReleaseRegistry.isWithin(entry.getKey(), bizKey)) {
+                    released.addAll(entry.getValue());
+                    iter.remove();
+                }
+            }
+        }
+        for (PreparedJar jar : released) {
+            NestedJarIndexRegistry.getInstance().release(jar.name, jar.size, jar.crc);
+        }
+        return released.size();
+    }
+
+    private static final class BizArchive {
+        private final Path file;
+        private final String containerPath;
+        private volatile FileArchiveSource container;
+        private volatile JarFile jarFile;
+        private volatile boolean sidecars;
+
+        BizArchive(Path file, String containerPath) {
+            this.file = file;
+            this.containerPath = containerPath;
+        }
+
+        String getKey() {
+            return NestedJarFilePool.getKey(file.toString(), containerPath);
+        }
+
+        void close() {
+            if (jarFile != null) {
+                NestedJarFilePool.getInstance().release(file.toString(), containerPath);
+                jarFile = null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return containerPath.isEmpty() ? file.toString() : file + "!/" + containerPath;
+        }
+    }
+
+    private static final class NestedJar {
+        private final String name;
+        private final long size;
+        private final long crc;
+        private final ArchiveSource source;
+
+        NestedJar(String name, long size, long crc, ArchiveSource source) {
+            this.name = name;
+            this.size = size;
+            this.crc = crc;
+            this.source = source;
+        }
+    }
+
+    private static final class PreparedJar {
+        private final String name;
+        private final long size;
+        private final long crc;
+
+        PreparedJar(String name, long size, long crc) {
+            this.name = name;
+            this.size = size;
+            this.crc = crc;
+        }
+    }
+}
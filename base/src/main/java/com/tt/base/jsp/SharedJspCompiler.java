@@ -0,0 +1,340 @@
+package com.tt.base.jsp;
+
+import com.tt.nested.NestedJarFilePool;
+import com.tt.nested.NestedReleaseRegistry;
+import org.apache.jasper.Options;
+import org.apache.jasper.compiler.Compiler;
+import org.apache.jasper.compiler.JDTCompiler;
+import org.apache.jasper.compiler.SmapStratum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Jasper compiler that shares compiled JSP classes between modules, and
+ * across restarts, through a content addressed cache on local disk.
+ * <p>
+ * The cache key is a SHA-256 over the JSP source, the content of every file
+ * it depends on (includes, TLDs and tag files), the content of every JAR
+ * those dependencies come from, the generated class name and the Jasper
+ * options that affect the generated code. Modules serving byte-identical
+ * JSPs, typically from a shared dependency JAR, therefore reuse the class
+ * files compiled by the first of them instead of running the Java compiler
+ * again, and any change to a dependency JAR yields a new key.
+ * <p>
+ * Enabled per web context with the Jasper init parameter
+ * {@code compilerClassName}. The cache directory is set with the
+ * {@value #CACHE_DIR_PROPERTY} system property. The cache is bypassed in
+ * development mode, where Jasper checks the dependencies recorded in the
+ * class, which name the files of the module that compiled it.
+ */
+public class SharedJspCompiler extends JDTCompiler {
+
+    public static final String CACHE_DIR_PROPERTY = "koupleless.jsp.cache.dir";
+
+    private static final String KEY_VERSION = "1";
+
+    private static final String JAR_SEPARATOR = "!/";
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private static final String DEPENDANT_PREFIX = "_jspx_dependants.put(\"";
+
+    private static final String DEPENDANT_SUFFIX = "\", Long.valueOf(";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedJspCompiler.class);
+
+    // jar URL -> 内容摘要，同一 jar 只计算一次，模块卸载时只清除该模块 jar 及其内嵌 jar 的摘要
+    private static final Map<String, JarDigest> jarDigests = new ConcurrentHashMap<>();
+
+    static {
+        NestedReleaseRegistry.register(SharedJspCompiler::releaseBiz);
+    }
+
+    /*
+     * 模块重新部署到同一位置时 jar 内容可能已变化，需重新计算摘要
+     */
+    private static int releaseBiz(String bizKey) {
+        int released = 0;
+        Iterator<JarDigest> iter = jarDigests.values().iterator();
+        while (iter.hasNext()) {
+            if (NestedReleaseRegistry.isWithin(iter.next().key, bizKey)) {
+                iter.remove();
+                released++;
+            }
+        }
+        return released;
+    }
+
+    @Override
+    protected void generateClass(Map<String, SmapStratum> smaps) throws Exception {
+        if (options.getDevelopment()) {
+            super.generateClass(smaps);
+            return;
+        }
+        String key = getCacheKey();
+        if (key == null) {
+            super.generateClass(smaps);
+            return;
+        }
+        Path entry = getCacheDirectory().resolve(key.substring(0, 2)).resolve(key);
+        File classFile = new File(ctxt.getClassFileName());
+        String className = ctxt.getServletClassName();
+        if (restore(entry, classFile.getParentFile().toPath(), className)) {
+            LOGGER.debug("Reused compiled JSP {} from {}", ctxt.getJspFile(), entry);
+            return;
+        }
+        super.generateClass(smaps);
+        store(entry, classFile.getParentFile().toPath(), className);
+    }
+
+    /**
+     * @return the key of the class files of the JSP being compiled or
+     *         {@code null} if the JSP or one of its dependencies cannot be
+     *         read, in which case the JSP is compiled without the cache
+     */
+    private String getCacheKey() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, KEY_VERSION);
+            update(digest, Compiler.class.getPackage().getImplementationVersion());
+            update(digest, ctxt.getServletPackageName() + "." + ctxt.getServletClassName());
+            updateOptions(digest, options);
+            try (InputStream is = ctxt.getResourceAsStream(ctxt.getJspFile())) {
+                if (is == null) {
+                    return null;
+                }
+                update(digest, digest(is));
+            }
+            for (String dependency : getDependencyDigests()) {
+                update(digest, dependency);
+            }
+            return toHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException | RuntimeException e) {
+            LOGGER.debug("Unable to compute the cache key of JSP {}, compiling it", ctxt.getJspFile(), e);
+            return null;
+        }
+    }
+
+    /*
+     * 依赖文件的路径因模块而异，只取其在 jar 内的名称与内容摘要，按名称排序保证结果稳定
+     */
+    private List<String> getDependencyDigests() throws IOException, NoSuchAlgorithmException {
+        List<String> dependants = getDependants();
+        List<String> result = new ArrayList<>(dependants.size());
+        for (String dependant : dependants) {
+            int separator = dependant.lastIndexOf(JAR_SEPARATOR);
+            String name = separator < 0 ? dependant : dependant.substring(separator + JAR_SEPARATOR.length());
+            String contentDigest;
+            try (InputStream is = openDependant(dependant)) {
+                if (is == null) {
+                    throw new IOException("Dependency " + dependant + " not found");
+                }
+                contentDigest = digest(is);
+            }
+            String jarDigest = separator < 0 ? "" : getJarDigest(dependant.substring(0, separator));
+            result.add(name + '|' + contentDigest + '|' + jarDigest);
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /*
+     * PageInfo 不对外可见；generateJava() 已将依赖写入生成的 servlet 源码的 _jspx_dependants 静态块，从中读取
+     */
+    private List<String> getDependants() throws IOException {
+        List<String> dependants = new ArrayList<>();
+        Path javaFile = Paths.get(ctxt.getServletJavaFileName());
+        for (String line : Files.readAllLines(javaFile, Charset.forName(options.getJavaEncoding()))) {
+            line = line.trim();
+            if (line.startsWith(DEPENDANT_PREFIX)) {
+                int end = line.lastIndexOf(DEPENDANT_SUFFIX);
+                if (end < DEPENDANT_PREFIX.length()) {
+                    throw new IOException("Unexpected dependency declaration in " + javaFile + ": " + line);
+                }
+                dependants.add(line.substring(DEPENDANT_PREFIX.length(), end));
+            }
+        }
+        return dependants;
+    }
+
+    private InputStream openDependant(String dependant) throws IOException {
+        if (dependant.startsWith("/")) {
+            return ctxt.getResourceAsStream(dependant);
+        }
+        return openUrl(dependant);
+    }
+
+    /**
+     * @param jarUrl    The URL of the JAR up to its last {@code "!/"}
+     *                      separator, e.g. {@code jar:file:/a/b.jar}
+     */
+    private static String getJarDigest(String jarUrl) throws IOException, NoSuchAlgorithmException {
+        JarDigest jarDigest = jarDigests.get(jarUrl);
+        if (jarDigest != null) {
+            return jarDigest.digest;
+        }
+        String fileUrl = jarUrl.startsWith("jar:") ? jarUrl.substring(4) : jarUrl;
+        // 嵌套 jar 需以 jar: URL 读取其在外层 jar 中的条目内容
+        String spec = fileUrl.contains(JAR_SEPARATOR) ? "jar:" + fileUrl : fileUrl;
+        String digest;
+        try (InputStream is = openUrl(spec)) {
+            digest = digest(is);
+        }
+        String key = NestedJarFilePool.getKey(new URL(fileUrl));
+        // 不在本地文件系统上的 jar 无法按模块释放，不缓存
+        if (key != null) {
+            jarDigests.put(jarUrl, new JarDigest(key, digest));
+        }
+        return digest;
+    }
+
+    private static final class JarDigest {
+        // 所在 jar 的句柄键，用于按模块释放
+        private final String key;
+        private final String digest;
+
+        JarDigest(String key, String digest) {
+            this.key = key;
+            this.digest = digest;
+        }
+    }
+
+    private static InputStream openUrl(String spec) throws IOException {
+        URLConnection connection = new URL(spec).openConnection();
+        connection.setUseCaches(false);
+        return connection.getInputStream();
+    }
+
+    private static void updateOptions(MessageDigest digest, Options options) {
+        update(digest, options.getCompilerSourceVM());
+        update(digest, options.getCompilerTargetVM());
+        update(digest, options.getJavaEncoding());
+        update(digest, String.valueOf(options.getClassDebugInfo()));
+        update(digest, String.valueOf(options.isSmapSuppressed()));
+        update(digest, String.valueOf(options.genStringAsCharArray()));
+        update(digest, String.valueOf(options.isPoolingEnabled()));
+        update(digest, String.valueOf(options.getTrimSpaces()));
+        update(digest, String.valueOf(options.isXpoweredBy()));
+        update(digest, String.valueOf(options.getMappedFile()));
+        update(digest, String.valueOf(options.getErrorOnUseBeanInvalidClassAttribute()));
+        update(digest, String.valueOf(options.getStrictQuoteEscaping()));
+        update(digest, String.valueOf(options.getQuoteAttributeEL()));
+    }
+
+    private static boolean restore(Path entry, Path outputDirectory, String className) {
+        if (!Files.isRegularFile(entry.resolve(className + CLASS_SUFFIX))) {
+            return false;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(entry)) {
+            Files.createDirectories(outputDirectory);
+            for (Path file : files) {
+                Files.copy(file, outputDirectory.resolve(file.getFileName().toString()),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read compiled JSP cache entry {}, compiling", entry, e);
+            return false;
+        }
+    }
+
+    /*
+     * 先写入临时目录再原子重命名，并发编译同一 jsp 的模块不会读到写了一半的条目
+     */
+    private static void store(Path entry, Path outputDirectory, String className) {
+        Path temp = null;
+        try {
+            Files.createDirectories(entry.getParent());
+            temp = Files.createTempDirectory(entry.getParent(), entry.getFileName() + ".tmp");
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(outputDirectory,
+                    (path) -> isClassFile(path.getFileName().toString(), className))) {
+                for (Path file : files) {
+                    Files.copy(file, temp.resolve(file.getFileName().toString()));
+                }
+            }
+            Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        } catch (IOException e) {
+            // 条目已存在时为其他模块并发写入，无需处理
+            if (!Files.isDirectory(entry)) {
+                LOGGER.warn("Unable to store compiled JSP in cache entry {}", entry, e);
+            }
+        } finally {
+            if (temp != null) {
+                delete(temp);
+            }
+        }
+    }
+
+    private static boolean isClassFile(String fileName, String className) {
+        return fileName.equals(className + CLASS_SUFFIX) ||
+                (fileName.startsWith(className + "$") && fileName.endsWith(CLASS_SUFFIX));
+    }
+
+    private static void delete(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach((path) -> path.toFile().delete());
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    private static Path getCacheDirectory() {
+        String directory = System.getProperty(CACHE_DIR_PROPERTY);
+        if (directory == null || directory.isEmpty()) {
+            return Paths.get(System.getProperty("java.io.tmpdir"), "koupleless-jsp-cache");
+        }
+        return Paths.get(directory);
+    }
+
+    private static String digest(InputStream is) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = is.read(buffer)) > 0) {
+            digest.update(buffer, 0, n);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+        // 写入长度，避免相邻字段拼接后产生歧义
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,70 @@
+package com.tt.base.jsp;
+
+import com.tt.base.web.BizContexts;
+import org.apache.catalina.Container;
+import org.apache.catalina.Context;
+import org.apache.catalina.Wrapper;
+import org.apache.jasper.servlet.JspServlet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Makes the JSP servlet of every biz compile through {@link SharedJspCompiler}.
+ * The compiler lives in the base, so bizs cannot name it in their own
+ * configuration: a biz started on its own would fail to load it. The base
+ * sets the Jasper init parameter {@value #COMPILER_CLASS_NAME} on the JSP
+ * servlet of each biz context before the context starts, unless the biz set
+ * it itself or loads Jasper from its own JARs, in which case Jasper could
+ * not see the compiler either.
+ * <p>
+ * Disabled with {@value #ENABLED_PROPERTY} set to {@code false}.
+ */
+@Component
+@ConditionalOnProperty(name = SharedJspCompilerCustomizer.ENABLED_PROPERTY, matchIfMissing = true)
+public class SharedJspCompilerCustomizer implements WebServerFactoryCustomizer<TomcatServletWebServerFactory> {
+
+    static final String ENABLED_PROPERTY = "koupleless.jsp.shared-compiler.enabled";
+
+    static final String COMPILER_CLASS_NAME = "compilerClassName";
+
+    private static final String JSP_SERVLET_NAME = "jsp";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedJspCompilerCustomizer.class);
+
+    @Override
+    public void customize(TomcatServletWebServerFactory factory) {
+        BizContexts.onBizContextAdded(factory, SharedJspCompilerCustomizer::useSharedCompiler);
+    }
+
+    private static void useSharedCompiler(Context context) {
+        Container child = context.findChild(JSP_SERVLET_NAME);
+        if (!(child instanceof Wrapper)) {
+            return;
+        }
+        Wrapper jspWrapper = (Wrapper) child;
+        if (jspWrapper.findInitParameter(COMPILER_CLASS_NAME) != null || !sharesJasper(context)) {
+            return;
+        }
+        jspWrapper.addInitParameter(COMPILER_CLASS_NAME, SharedJspCompiler.class.getName());
+        LOGGER.debug("Compiling JSPs of {} with {}", context.getName(), SharedJspCompiler.class.getName());
+    }
+
+    /*
+     * Jasper 按其自身的类加载器加载编译器类，只有模块委托基座加载 Jasper 时才能加载到基座中的编译器
+     */
+    private static boolean sharesJasper(Context context) {
+        ClassLoader classLoader = context.getParentClassLoader();
+        if (classLoader == null) {
+            return false;
+        }
+        try {
+            return Class.forName(JspServlet.class.getName(), false, classLoader) == JspServlet.class;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.tt.base.metrics;
+
+import com.tt.base.ark.BizNames;
+import com.tt.nested.NestedMetrics;
+import com.tt.nested.NestedReleaseRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the timings of the nested resource path, reported through
+ * {@link NestedMetrics}, as Micrometer meters tagged with the name of the biz
+ * and the path of the nested archive:
+ * <ul>
+ * <li>{@value #ENTRY_TABLE_BUILD} - time to build the entry table of a
+ *     resource set</li>
+ * <li>{@value #ENTRY_TABLE_ENTRIES} - number of entries of that table</li>
+ * <li>{@value #ENTRY_READ} - time spent opening and reading an entry</li>
+ * <li>{@value #ENTRY_READ_BYTES} - bytes read from, and so inflated by,
+ *     nested archives</li>
+ * <li>{@value #ENTRIES_SKIPPED} - entries passed over while streaming a
+ *     nested archive to reach an entry</li>
+ * <li>{@value #RESOURCE_JAR_PROBE} - time to probe a jar for
+ *     {@code META-INF/resources}</li>
+ * </ul>
+ * The recorder is installed once the meters are bound to the registry of
+ * the base. Until then, or with {@value #ENABLED_PROPERTY} set to
+ * {@code false}, the hooks cost a single volatile read. The meters of an
+ * archive are registered on first use and kept, so that recording costs two
+ * map lookups; they are forgotten when the biz is uninstalled.
+ */
+@Component
+@ConditionalOnProperty(name = NestedResourceMetrics.ENABLED_PROPERTY, matchIfMissing = true)
+public class NestedResourceMetrics implements MeterBinder, NestedMetrics.Recorder {
+
+    static final String ENABLED_PROPERTY = "koupleless.nested.metrics.enabled";
+
+    static final String ENTRY_TABLE_BUILD = "koupleless.nested.entry.table.build";
+    static final String ENTRY_TABLE_ENTRIES = "koupleless.nested.entry.table.entries";
+    static final String ENTRY_READ = "koupleless.nested.entry.read";
+    static final String ENTRY_READ_BYTES = "koupleless.nested.entry.read.bytes";
+    static final String ENTRIES_SKIPPED = "koupleless.nested.entries.skipped";
+    static final String RESOURCE_JAR_PROBE = "koupleless.static.resource.jar.probe";
+
+    private static final String UNKNOWN = "unknown";
+
+    private volatile MeterRegistry registry;
+
+    // 句柄键 -> 归档路径 -> 已注册的计量器，避免每次记录都重新构建标签及查找注册表
+    private final Map<String,Map<String,ArchiveMeters>> meters = new ConcurrentHashMap<>();
+
+    private final NestedReleaseRegistry.Releaser releaser = this::releaseBiz;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // 只绑定到第一个注册表，基座仅有 actuator 创建的一个
+        if (this.registry == null) {
+            this.registry = registry;
+            NestedReleaseRegistry.register(releaser);
+            NestedMetrics.setRecorder(this);
+        }
+    }
+
+    @PreDestroy
+    public void unbind() {
+        if (NestedMetrics.getRecorder() == this) {
+            NestedMetrics.setRecorder(null);
+        }
+        NestedReleaseRegistry.unregister(releaser);
+        meters.clear();
+    }
+
+    @Override
+    public void entryTableBuilt(String key, String archivePath, long nanos, int entries) {
+        ArchiveMeters archiveMeters = getMeters(key, archivePath);
+        archiveMeters.entryTableBuild().record(nanos, TimeUnit.NANOSECONDS);
+        archiveMeters.entryTableEntries().record(entries);
+    }
+
+    @Override
+    public void entryRead(String key, String archivePath, long nanos, long bytes) {
+        ArchiveMeters archiveMeters = getMeters(key, archivePath);
+        archiveMeters.entryRead().record(nanos, TimeUnit.NANOSECONDS);
+        archiveMeters.entryReadBytes().increment(bytes);
+    }
+
+    @Override
+    public void entriesSkipped(String key, String archivePath, int skipped) {
+        getMeters(key, archivePath).entriesSkipped().increment(skipped);
+    }
+
+    @Override
+    public void resourceJarProbed(String key, String archivePath, long nanos) {
+        getMeters(key, archivePath).resourceJarProbe().record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private ArchiveMeters getMeters(String key, String archivePath) {
+        String bizKey = key == null ? UNKNOWN : key;
+        String archive = archivePath == null ? UNKNOWN : archivePath;
+        // 先查找，命中时不创建 lambda
+        Map<String,ArchiveMeters> archives = meters.get(bizKey);
+        if (archives == null) {
+            archives = meters.computeIfAbsent(bizKey, (k) -> new ConcurrentHashMap<>());
+        }
+        ArchiveMeters archiveMeters = archives.get(archive);
+        if (archiveMeters == null) {
+            archiveMeters = archives.computeIfAbsent(archive,
+                    (a) -> new ArchiveMeters(registry, tags(key, archivePath)));
+        }
+        return archiveMeters;
+    }
+
+    /*
+     * 卸载后同一位置可能部署其他模块，须按新的模块名重新注册
+     */
+    private int releaseBiz(String bizKey) {
+        int released = 0;
+        for (String key : meters.keySet()) {
+            if (NestedReleaseRegistry.isWithin(key, bizKey) && meters.remove(key) != null) {
+                released++;
+            }
+        }
+        return released;
+    }
+
+    private static String[] tags(String key, String archivePath) {
+        return new String[] { "biz", getBizName(key), "archive", archivePath == null ? UNKNOWN : archivePath };
+    }
+
+    private static String getBizName(String key) {
+        return key == null ? UNKNOWN : BizNames.getBizName(key);
+    }
+
+    /**
+     * The meters of one nested archive, each registered on first use so
+     * that archives only report the meters that apply to them.
+     */
+    private static final class ArchiveMeters {
+
+        private final MeterRegistry registry;
+        private final String[] tags;
+
+        private volatile Timer entryTableBuild;
+        private volatile DistributionSummary entryTableEntries;
+        private volatile Timer entryRead;
+        private volatile Counter entryReadBytes;
+        private volatile Counter entriesSkipped;
+        private volatile Timer resourceJarProbe;
+
+        ArchiveMeters(MeterRegistry registry, String[] tags) {
+            this.registry = registry;
+            this.tags = tags;
+        }
+
+        // 并发首次使用时可能重复注册，注册表返回同一计量器
+        Timer entryTableBuild() {
+            Timer timer = entryTableBuild;
+            if (timer == null) {
+                timer = Timer.builder(ENTRY_TABLE_BUILD).description("Time to build the entry table of a nested JAR")
+                        .tags(tags).register(registry);
+                entryTableBuild = timer;
+            }
+            return timer;
+        }
+
+        DistributionSummary entryTableEntries() {
+            DistributionSummary summary = entryTableEntries;
+            if (summary == null) {
+                summary = DistributionSummary.builder(ENTRY_TABLE_ENTRIES)
+                        .description("Entries of the table of a nested JAR").tags(tags).register(registry);
+                entryTableEntries = summary;
+            }
+            return summary;
+        }
+
+        Timer entryRead() {
+            Timer timer = entryRead;
+            if (timer == null) {
+                timer = Timer.builder(ENTRY_READ).description("Time spent opening and reading entries of a nested JAR")
+                        .tags(tags).register(registry);
+                entryRead = timer;
+            }
+            return timer;
+        }
+
+        Counter entryReadBytes() {
+            Counter counter = entryReadBytes;
+            if (counter == null) {
+                counter = Counter.builder(ENTRY_READ_BYTES).description("Bytes read from entries of a nested JAR")
+                        .baseUnit("bytes").tags(tags).register(registry);
+                entryReadBytes = counter;
+            }
+            return counter;
+        }
+
+        Counter entriesSkipped() {
+            Counter counter = entriesSkipped;
+            if (counter == null) {
+                counter = Counter.builder(ENTRIES_SKIPPED)
+                        .description("Entries passed over while streaming a nested JAR").tags(tags).register(registry);
+                entriesSkipped = counter;
+            }
+            return counter;
+        }
+
+        Timer resourceJarProbe() {
+            Timer timer = resourceJarProbe;
+            if (timer == null) {
+                timer = Timer.builder(RESOURCE_JAR_PROBE).description("Time to probe a jar for META-INF/resources")
+                        .tags(tags).register(registry);
+                resourceJarProbe = timer;
+            }
+            return timer;
+        }
+    }
+}
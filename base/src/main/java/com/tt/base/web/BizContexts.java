@@ -0,0 +1,64 @@
+package com.tt.base.web;
+
+import org.apache.catalina.Container;
+import org.apache.catalina.ContainerEvent;
+import org.apache.catalina.ContainerListener;
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+
+import java.util.function.Consumer;
+
+/**
+ * Applies an action to the context of every biz deployed into the host of
+ * the base. Bizs create their own context on the host the base context runs
+ * in; Tomcat reports it to the listeners of the host before starting it, so
+ * the action may still change its configuration.
+ */
+public final class BizContexts {
+
+    private BizContexts() {
+    }
+
+    /**
+     * @param factory   The factory of the web server of the base
+     * @param action    Applied to the context of every biz, before the
+     *                      context is started
+     */
+    public static void onBizContextAdded(TomcatServletWebServerFactory factory, Consumer<Context> action) {
+        factory.addContextCustomizers((context) -> context.addLifecycleListener((event) -> {
+            // 定制时基座 context 尚未加入 host，配置阶段再在 host 上监听之后加入的模块 context
+            if (Lifecycle.CONFIGURE_START_EVENT.equals(event.getType())) {
+                registerHostListener(context.getParent(), action);
+            }
+        }));
+    }
+
+    private static void registerHostListener(Container host, Consumer<Context> action) {
+        if (host == null) {
+            return;
+        }
+        for (ContainerListener listener : host.findContainerListeners()) {
+            if (listener instanceof BizContextListener && ((BizContextListener) listener).action == action) {
+                return;
+            }
+        }
+        host.addContainerListener(new BizContextListener(action));
+    }
+
+    private static final class BizContextListener implements ContainerListener {
+
+        private final Consumer<Context> action;
+
+        BizContextListener(Consumer<Context> action) {
+            this.action = action;
+        }
+
+        @Override
+        public void containerEvent(ContainerEvent event) {
+            if (Container.ADD_CHILD_EVENT.equals(event.getType()) && event.getData() instanceof Context) {
+                action.accept((Context) event.getData());
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.tt.base.web;
+
+import org.apache.catalina.Container;
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleState;
+import org.apache.catalina.Loader;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.WebResourceSet;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.webresources.JarWarResourceSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.DispatcherType;
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warms up the web resources of every biz while it starts, so that its first
+ * requests do not pay for them:
+ * <ul>
+ * <li>builds the entry table and offset index of every nested JAR resource
+ *     set of the context</li>
+ * <li>loads the servlets of JSPs precompiled at build time and compiles, or
+ *     loads from the shared compile cache, the other JSPs found under
+ *     {@value #JSP_PATHS_PROPERTY}</li>
+ * </ul>
+ * The context of a biz is started, and the resource JARs and TLDs it uses
+ * are scanned, while the biz creates its web server. The warm-up runs right
+ * after that on a bounded executor shared by all bizs, and the starting biz
+ * waits for it, for at most {@value #TIMEOUT_PROPERTY} seconds, so that it
+ * is not reported ready with cold resources.
+ * <p>
+ * Disabled with {@value #ENABLED_PROPERTY} set to {@code false}.
+ */
+@Component
+@ConditionalOnProperty(name = BizWebResourcesWarmUp.ENABLED_PROPERTY, matchIfMissing = true)
+public class BizWebResourcesWarmUp implements WebServerFactoryCustomizer<TomcatServletWebServerFactory> {
+
+    static final String ENABLED_PROPERTY = "koupleless.warmup.enabled";
+
+    static final String JSP_PATHS_PROPERTY = "koupleless.warmup.jsp-paths";
+
+    static final String TIMEOUT_PROPERTY = "koupleless.warmup.timeout-seconds";
+
+    private static final String JSP_SERVLET_NAME = "jsp";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BizWebResourcesWarmUp.class);
+
+    private final ExecutorService executor;
+
+    private final String[] jspPaths;
+
+    private final long timeoutSeconds;
+
+    public BizWebResourcesWarmUp(@Value("${koupleless.warmup.threads:4}") int threads,
+                                 @Value("${" + JSP_PATHS_PROPERTY + ":/WEB-INF/views/}") String[] jspPaths,
+                                 @Value("${" + TIMEOUT_PROPERTY + ":120}") long timeoutSeconds) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), (runnable) -> {
+                    Thread thread = new Thread(runnable, "biz-warmup-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // 模块安装通常集中在启动阶段，之后释放线程
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+        this.jspPaths = jspPaths;
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void customize(TomcatServletWebServerFactory factory) {
+        BizContexts.onBizContextAdded(factory, this::warmUpWhenStarted);
+    }
+
+    private void warmUpWhenStarted(Context context) {
+        if (context.getState() == LifecycleState.STARTED) {
+            warmUp(context);
+            return;
+        }
+        // host 尚未启动时，context 随 host 启动
+        context.addLifecycleListener((event) -> {
+            if (Lifecycle.AFTER_START_EVENT.equals(event.getType())) {
+                warmUp(context);
+            }
+        });
+    }
+
+    /**
+     * Warms up the resources of a started context, waiting for the warm-up
+     * to finish or to time out.
+     */
+    void warmUp(Context context) {
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        WebResourceRoot root = context.getResources();
+        if (root != null) {
+            for (WebResourceSet resourceSet : root.getJarResources()) {
+                if (resourceSet instanceof JarWarResourceSet) {
+                    tasks.add(submit(context, ((JarWarResourceSet) resourceSet).getArchivePath(),
+                            ((JarWarResourceSet) resourceSet)::prepareIndex));
+                }
+            }
+        }
+        Map<String, Wrapper> precompiled = findPrecompiledJsps(context);
+        for (Wrapper wrapper : precompiled.values()) {
+            tasks.add(submit(context, wrapper.getName(), wrapper::load));
+        }
+        Wrapper jspWrapper = (Wrapper) context.findChild(JSP_SERVLET_NAME);
+        if (root != null && jspWrapper != null) {
+            for (String jspPath : findJsps(root)) {
+                if (!precompiled.containsKey(jspPath)) {
+                    tasks.add(submit(context, jspPath, () -> compileJsp(jspWrapper, jspPath)));
+                }
+            }
+        }
+        if (tasks.isEmpty()) {
+            return;
+        }
+        try {
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).get(timeoutSeconds, TimeUnit.SECONDS);
+            LOGGER.info("Warmed up {} web resources of {} in {} ms", tasks.size(), context.getName(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (TimeoutException e) {
+            LOGGER.warn("Warm-up of {} did not finish within {} seconds, continuing startup",
+                    context.getName(), timeoutSeconds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // 各任务自行记录失败，不会到这里
+        }
+    }
+
+    private CompletableFuture<Void> submit(Context context, String name, WarmUpTask task) {
+        Loader loader = context.getLoader();
+        ClassLoader classLoader = loader == null ? null : loader.getClassLoader();
+        return CompletableFuture.runAsync(() -> {
+            Thread thread = Thread.currentThread();
+            ClassLoader original = thread.getContextClassLoader();
+            if (classLoader != null) {
+                thread.setContextClassLoader(classLoader);
+            }
+            try {
+                task.run();
+            } catch (Exception | LinkageError e) {
+                // 预热失败不影响启动，首次请求时仍会按原方式处理
+                LOGGER.warn("Unable to warm up {} of {}", name, context.getName(), e);
+            } finally {
+                thread.setContextClassLoader(original);
+            }
+        }, executor);
+    }
+
+    /*
+     * 构建时预编译的 jsp 以精确路径映射到其 servlet，键为 jsp 路径
+     */
+    private static Map<String, Wrapper> findPrecompiledJsps(Context context) {
+        Map<String, Wrapper> precompiled = new LinkedHashMap<>();
+        for (String pattern : context.findServletMappings()) {
+            if (pattern.startsWith("/") && (pattern.endsWith(".jsp") || pattern.endsWith(".jspx"))) {
+                Container child = context.findChild(context.findServletMapping(pattern));
+                if (child instanceof Wrapper && !JSP_SERVLET_NAME.equals(child.getName())) {
+                    precompiled.put(pattern, (Wrapper) child);
+                }
+            }
+        }
+        return precompiled;
+    }
+
+    private List<String> findJsps(WebResourceRoot root) {
+        List<String> jsps = new ArrayList<>();
+        for (String jspPath : jspPaths) {
+            String directory = jspPath.trim();
+            if (!directory.isEmpty()) {
+                collectJsps(root, directory.endsWith("/") ? directory : directory + "/", jsps);
+            }
+        }
+        return jsps;
+    }
+
+    private static void collectJsps(WebResourceRoot root, String directory, List<String> jsps) {
+        Set<String> paths = root.listWebAppPaths(directory);
+        if (paths == null) {
+            return;
+        }
+        for (String path : paths) {
+            if (path.endsWith("/")) {
+                collectJsps(root, path, jsps);
+            } else if (path.endsWith(".jsp") || path.endsWith(".jspx")) {
+                jsps.add(path);
+            }
+        }
+    }
+
+    /*
+     * 以 jsp_precompile 请求调用 JspServlet：只编译并加载 jsp，不执行
+     */
+    private static void compileJsp(Wrapper jspWrapper, String jspPath) throws ServletException, IOException {
+        Servlet servlet = jspWrapper.allocate();
+        try {
+            servlet.service(precompileRequest(jspPath), noopResponse());
+        } finally {
+            jspWrapper.deallocate(servlet);
+        }
+    }
+
+    private static ServletRequest precompileRequest(String jspPath) {
+        Map<String, Object> attributes = new HashMap<>();
+        return (ServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getServletPath":
+                            return jspPath;
+                        case "getQueryString":
+                            return "jsp_precompile=true";
+                        case "getMethod":
+                            return "GET";
+                        case "getDispatcherType":
+                            return DispatcherType.REQUEST;
+                        case "getAttribute":
+                            return attributes.get((String) args[0]);
+                        case "setAttribute":
+                            attributes.put((String) args[0], args[1]);
+                            return null;
+                        case "removeAttribute":
+                            attributes.remove((String) args[0]);
+                            return null;
+                        case "toString":
+                            return "Precompile request for " + jspPath;
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    private static ServletResponse noopResponse() {
+        return (ServletResponse) Proxy.newProxyInstance(HttpServletResponse.class.getClassLoader(),
+                new Class<?>[] { HttpServletResponse.class },
+                (proxy, method, args) -> defaultValue(method.getReturnType()));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    private interface WarmUpTask {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,51 @@
+package com.tt.base.web;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Valve;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Adds a {@link NestedStaticResourceValve} to the context of the base and,
+ * through a listener on the host they share, to the context of every biz
+ * deployed later.
+ * <p>
+ * The valve answers before the filters of the context run, so it is only
+ * added with {@value #ENABLED_PROPERTY} set to {@code true}, and serves only
+ * the extensions listed in {@value #EXTENSIONS_PROPERTY}.
+ */
+@Component
+@ConditionalOnProperty(name = NestedStaticResourceCustomizer.ENABLED_PROPERTY, havingValue = "true")
+public class NestedStaticResourceCustomizer implements WebServerFactoryCustomizer<TomcatServletWebServerFactory> {
+
+    static final String ENABLED_PROPERTY = "koupleless.static-resources.nested.enabled";
+
+    static final String EXTENSIONS_PROPERTY = "koupleless.static-resources.nested.extensions";
+
+    @Value("${koupleless.static-resources.sendfile.size:49152}")
+    private long sendfileSize;
+
+    @Value("${" + EXTENSIONS_PROPERTY + ":}")
+    private String extensions;
+
+    @Override
+    public void customize(TomcatServletWebServerFactory factory) {
+        factory.addContextCustomizers(this::addValve);
+        BizContexts.onBizContextAdded(factory, this::addValve);
+    }
+
+    private void addValve(Context context) {
+        for (Valve valve : context.getPipeline().getValves()) {
+            if (valve instanceof NestedStaticResourceValve) {
+                return;
+            }
+        }
+        NestedStaticResourceValve valve = new NestedStaticResourceValve();
+        valve.setSendfileSize(sendfileSize);
+        valve.setExtensions(extensions);
+        context.getPipeline().addValve(valve);
+    }
+}
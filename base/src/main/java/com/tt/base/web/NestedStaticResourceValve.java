@@ -0,0 +1,352 @@
+package com.tt.base.web;
+
+import com.tt.base.ark.BizNames;
+import org.apache.catalina.Context;
+import org.apache.catalina.Globals;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.WebResourceSet;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+import org.apache.catalina.webresources.JarWarResource;
+import org.apache.catalina.webresources.JarWarResourceSet;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves the static resources of nested JARs from their index: conditional
+ * requests are answered from the central directory and large resources are
+ * sent with sendfile.
+ * <p>
+ * Responses carry a strong ETag derived from the CRC and size of the entry
+ * and the version of the biz, see {@link JarWarResource#getStrongETag(String)},
+ * instead of the weak ETag built from entry timestamps, which repackaging a
+ * biz changes even when the content does not. {@code If-None-Match} and
+ * {@code If-Modified-Since} are evaluated against it and answered with 304
+ * without reading the content.
+ * <p>
+ * Only resources stored uncompressed in a nested JAR that is itself stored
+ * uncompressed, such as the {@code META-INF/resources} of a dependency of a
+ * biz packaged by Spring Boot, have their content as is at a fixed position
+ * of the biz archive on disk. For those the valve hands that file and range
+ * to the connector, so that their content goes from the page cache to the
+ * socket without being inflated, copied into the resource cache or through
+ * the heap. Other resources are written from the resource cache of the
+ * context. Range requests are passed on to the default servlet.
+ * <p>
+ * Where the build stored a gzip compressed {@code .gz} sibling of a resource
+ * in the same nested JAR, that sibling is served, with its own ETag, to
+ * clients that accept gzip, so that the connector does not compress the
+ * resource again on every response.
+ * <p>
+ * The valve runs before the filters of the context, so security and any
+ * other filters are not applied to the responses it writes. It therefore
+ * serves nothing unless extensions are listed with
+ * {@link #setExtensions(String)}, and only paths with one of those
+ * extensions; list only public static content no filter needs to see.
+ * <p>
+ * Which nested resource set serves a path, and whether it has a
+ * {@code .gz} sibling, is looked up once per path and remembered for the
+ * life of the valve, as the nested JARs of a context do not change while
+ * it runs.
+ */
+public class NestedStaticResourceValve extends ValveBase {
+
+    private static final String GZIP_SUFFIX = ".gz";
+
+    // 与 DefaultServlet 的 sendfileSize 默认值一致，小文件走资源缓存更快
+    private long sendfileSize = 48 * 1024;
+
+    private String[] extensions = new String[0];
+
+    // 路径 -> 提供该路径的嵌套资源集；只记录存在的资源，数量不超过嵌套 jar 的条目数
+    private final Map<String,NestedLookup> lookups = new ConcurrentHashMap<>();
+
+    public NestedStaticResourceValve() {
+        super(true);
+    }
+
+    /**
+     * @param sendfileSize  The minimum size, in bytes, of the resources
+     *                          served with sendfile
+     */
+    public void setSendfileSize(long sendfileSize) {
+        this.sendfileSize = sendfileSize;
+    }
+
+    public long getSendfileSize() {
+        return sendfileSize;
+    }
+
+    /**
+     * @param extensions    Comma separated extensions, without the leading
+     *                          dot, of the paths the valve may serve. Empty,
+     *                          the default, serves nothing.
+     */
+    public void setExtensions(String extensions) {
+        String trimmed = extensions.trim().toLowerCase(Locale.ENGLISH);
+        this.extensions = trimmed.isEmpty() ? new String[0] : trimmed.split("\\s*,\\s*");
+    }
+
+    @Override
+    protected synchronized void stopInternal() throws LifecycleException {
+        lookups.clear();
+        super.stopInternal();
+    }
+
+    @Override
+    public void invoke(Request request, Response response) throws IOException, ServletException {
+        if (!serve(request, response)) {
+            getNext().invoke(request, response);
+        }
+    }
+
+    private boolean serve(Request request, Response response) throws IOException {
+        String method = request.getMethod();
+        boolean head = "HEAD".equals(method);
+        if (!head && !"GET".equals(method)) {
+            return false;
+        }
+        String path = getRelativePath(request);
+        if (path == null || !isStatic(path)) {
+            return false;
+        }
+        Context context = request.getContext();
+        WebResourceRoot root = context == null ? null : context.getResources();
+        if (root == null) {
+            return false;
+        }
+        NestedLookup lookup = lookup(root, path);
+        if (lookup == null) {
+            return false;
+        }
+        JarWarResourceSet resourceSet = lookup.resourceSet;
+        boolean hasGzip = lookup.hasGzip;
+        boolean gzip = hasGzip && acceptsGzip(request);
+        String servedPath = gzip ? path + GZIP_SUFFIX : path;
+        WebResource nested = resourceSet.getResource(servedPath);
+        if (!(nested instanceof JarWarResource)) {
+            return false;
+        }
+        JarWarResource resource = (JarWarResource) nested;
+
+        String eTag = resource.getStrongETag(BizNames.getBizVersion(resourceSet.getBizKey()));
+        if (eTag == null) {
+            return false;
+        }
+        long lastModified = resource.getLastModified();
+        boolean notModified = isNotModified(request, eTag, lastModified);
+        if (!notModified && request.getHeader("Range") != null) {
+            return false;
+        }
+        if (hasGzip) {
+            response.addHeader("Vary", "Accept-Encoding");
+        }
+        if (notModified) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            response.setHeader("ETag", eTag);
+            response.setDateHeader("Last-Modified", lastModified);
+            return true;
+        }
+
+        long length = resource.getContentLength();
+        String contentType = context.getServletContext().getMimeType(path);
+        if (contentType != null) {
+            response.setContentType(contentType);
+        }
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        response.setContentLengthLong(length);
+        response.setHeader("ETag", eTag);
+        response.setDateHeader("Last-Modified", lastModified);
+        if (head) {
+            return true;
+        }
+        long offset = length < sendfileSize ? -1 : resource.getStoredContentOffset();
+        if (offset >= 0 && Boolean.TRUE.equals(request.getAttribute(Globals.SENDFILE_SUPPORTED_ATTR))) {
+            request.setAttribute(Globals.SENDFILE_FILENAME_ATTR, resourceSet.getArchiveFile());
+            request.setAttribute(Globals.SENDFILE_FILE_START_ATTR, Long.valueOf(offset));
+            request.setAttribute(Globals.SENDFILE_FILE_END_ATTR, Long.valueOf(offset + length));
+            return true;
+        }
+        // 小文件取资源缓存中的内容，超出缓存上限的逐块复制
+        WebResource served = root.getResource(servedPath);
+        byte[] content = served.getContent();
+        OutputStream os = response.getOutputStream();
+        if (content != null) {
+            os.write(content);
+        } else {
+            try (InputStream is = served.getInputStream()) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = is.read(buffer)) > 0) {
+                    os.write(buffer, 0, n);
+                }
+            }
+        }
+        return true;
+    }
+
+    /*
+     * 未列出 gzip 时也接受 "*"，q=0 表示拒绝
+     */
+    private static boolean acceptsGzip(Request request) {
+        Enumeration<String> acceptEncoding = request.getHeaders("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean accepted = false;
+        while (acceptEncoding.hasMoreElements()) {
+            for (String coding : acceptEncoding.nextElement().split(",")) {
+                int semicolon = coding.indexOf(';');
+                String name = (semicolon < 0 ? coding : coding.substring(0, semicolon)).trim();
+                boolean refused = semicolon >= 0 && isZeroQuality(coding.substring(semicolon + 1));
+                if (name.equalsIgnoreCase("gzip")) {
+                    return !refused;
+                }
+                if (name.equals("*")) {
+                    accepted = !refused;
+                }
+            }
+        }
+        return accepted;
+    }
+
+    private static boolean isZeroQuality(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            parameter = parameter.trim();
+            if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim()) == 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    /*
+     * RFC 7232：有 If-None-Match 时忽略 If-Modified-Since，GET/HEAD 使用弱比较
+     */
+    private static boolean isNotModified(Request request, String eTag, long lastModified) {
+        Enumeration<String> ifNoneMatch = request.getHeaders("If-None-Match");
+        if (ifNoneMatch != null && ifNoneMatch.hasMoreElements()) {
+            while (ifNoneMatch.hasMoreElements()) {
+                for (String candidate : ifNoneMatch.nextElement().split(",")) {
+                    candidate = candidate.trim();
+                    if (candidate.startsWith("W/")) {
+                        candidate = candidate.substring(2);
+                    }
+                    if (candidate.equals("*") || candidate.equals(eTag)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // HTTP 日期精确到秒
+        return ifModifiedSince != -1 && lastModified >= 0 && lastModified < ifModifiedSince + 1000;
+    }
+
+    private boolean isStatic(String path) {
+        if (path.isEmpty() || path.endsWith("/")) {
+            return false;
+        }
+        String upper = path.toUpperCase(Locale.ENGLISH);
+        if (upper.startsWith("/WEB-INF") || upper.startsWith("/META-INF")) {
+            return false;
+        }
+        int dot = path.lastIndexOf('.');
+        if (dot < path.lastIndexOf('/')) {
+            return false;
+        }
+        String extension = path.substring(dot + 1).toLowerCase(Locale.ENGLISH);
+        for (String candidate : extensions) {
+            if (candidate.equals(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * 同一嵌套 jar 中构建时生成的 .gz 与原资源互为变体，一并查找
+     */
+    private NestedLookup lookup(WebResourceRoot root, String path) {
+        NestedLookup lookup = lookups.get(path);
+        if (lookup != null) {
+            return lookup;
+        }
+        JarWarResourceSet resourceSet = findNestedResourceSet(root, path, root.getResource(path));
+        if (resourceSet == null) {
+            return null;
+        }
+        String gzipPath = path + GZIP_SUFFIX;
+        boolean hasGzip = findNestedResourceSet(root, gzipPath, root.getResource(gzipPath)) == resourceSet;
+        lookup = new NestedLookup(resourceSet, hasGzip);
+        lookups.put(path, lookup);
+        return lookup;
+    }
+
+    /*
+     * 仅当该路径实际由某个嵌套 jar 提供时返回其资源集，被其它资源集（如 pre resources）覆盖的不处理
+     */
+    private static JarWarResourceSet findNestedResourceSet(WebResourceRoot root, String path,
+            WebResource served) {
+        URL servedUrl = served == null || !served.isFile() ? null : served.getURL();
+        if (servedUrl == null) {
+            return null;
+        }
+        for (WebResourceSet resourceSet : root.getJarResources()) {
+            if (!(resourceSet instanceof JarWarResourceSet)) {
+                continue;
+            }
+            WebResource resource = resourceSet.getResource(path);
+            if (resource.isFile()) {
+                URL url = resource.getURL();
+                return resource instanceof JarWarResource && url != null &&
+                        servedUrl.toString().equals(url.toString()) ? (JarWarResourceSet) resourceSet : null;
+            }
+        }
+        return null;
+    }
+
+    private static final class NestedLookup {
+        private final JarWarResourceSet resourceSet;
+        private final boolean hasGzip;
+
+        NestedLookup(JarWarResourceSet resourceSet, boolean hasGzip) {
+            this.resourceSet = resourceSet;
+            this.hasGzip = hasGzip;
+        }
+    }
+
+    private static String getRelativePath(Request request) {
+        String uri = request.getDecodedRequestURI();
+        String contextPath = request.getContextPath();
+        if (uri == null || contextPath == null || !uri.startsWith(contextPath)) {
+            return null;
+        }
+        String path = uri.substring(contextPath.length());
+        return path.isEmpty() ? null : path;
+    }
+}
@@ -16,17 +16,23 @@
  */
 package org.apache.catalina.webresources;
 
+import com.tt.nested.FileArchiveSource;
+import com.tt.nested.JarEntryArchiveSource;
+import com.tt.nested.NestedContentCache;
+import com.tt.nested.NestedJarIndex;
+import com.tt.nested.NestedMetrics;
+import com.tt.nested.ZipCentralDirectory;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.buf.UriUtil;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.JarURLConnection;
-import java.net.URL;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
+import java.util.zip.ZipEntry;
 
 /**
  * Represents a single resource (file or directory) that is located within a
@@ -47,8 +53,125 @@ public class JarWarResource extends AbstractArchiveResource {
         this.archivePath = archivePath;
     }
 
+    /**
+     * @return the absolute position of the content of this resource within
+     *         the file on disk that contains the nested JAR, or -1 if the
+     *         content is not stored there as is, i.e. if this entry or an
+     *         archive enclosing it is compressed
+     */
+    public long getStoredContentOffset() {
+        JarWarResourceSet resourceSet = (JarWarResourceSet) getArchiveResourceSet();
+        FileArchiveSource nestedSource = resourceSet.getNestedArchiveSource();
+        NestedJarIndex index = nestedSource == null ? null : resourceSet.getEntryIndex();
+        NestedJarIndex.Entry entry = index == null ? null : index.getEntry(getResource().getName());
+        if (entry == null || entry.getMethod() != ZipEntry.STORED) {
+            return -1;
+        }
+        try {
+            return nestedSource.getOffset() +
+                    ZipCentralDirectory.getDataOffset(nestedSource, entry.getLocalHeaderOffset());
+        } catch (IOException e) {
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("jarResource.getInputStreamFail",
+                        getResource().getName(), getBaseUrl()), e);
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Unlike {@link #getETag()}, which is derived from the size and the
+     * timestamp of the entry, this only changes with the content or the
+     * version of the biz. It is computed from the CRC recorded in the
+     * central directory, so the content is not read.
+     *
+     * @param bizVersion    The version of the biz serving the resource, or
+     *                          {@code null} if unknown
+     *
+     * @return the strong ETag of this resource, or {@code null} if the CRC
+     *         of the entry is not known
+     */
+    public String getStrongETag(String bizVersion) {
+        long crc = getResource().getCrc();
+        if (crc < 0) {
+            NestedJarIndex index = ((JarWarResourceSet) getArchiveResourceSet()).getEntryIndex();
+            NestedJarIndex.Entry entry = index == null ? null : index.getEntry(getResource().getName());
+            if (entry == null || entry.getCrc() < 0) {
+                return null;
+            }
+            crc = entry.getCrc();
+        }
+        StringBuilder eTag = new StringBuilder("\"")
+                .append(Long.toHexString(crc)).append('-').append(getContentLength());
+        if (bizVersion != null) {
+            // 版本号中的引号及非 ASCII 字符不能出现在 ETag 中
+            eTag.append('-').append(Integer.toHexString(bizVersion.hashCode()));
+        }
+        return eTag.append('"').toString();
+    }
+
     @Override
     protected JarInputStreamWrapper getJarInputStreamWrapper() {
+        NestedContentCache cache = NestedContentCache.getInstance();
+        if (cache.isCacheable(getResource().getSize())) {
+            return getCachedInputStreamWrapper(cache);
+        }
+        return getUncachedInputStreamWrapper();
+    }
+
+    /**
+     * Serves this resource from the nested content cache, inflating it from
+     * the nested JAR and caching it on a miss.
+     */
+    private JarInputStreamWrapper getCachedInputStreamWrapper(NestedContentCache cache) {
+        JarWarResourceSet resourceSet = (JarWarResourceSet) getArchiveResourceSet();
+        String biz = resourceSet.getBizKey();
+        String name = getResource().getName();
+        byte[] content = cache.get(biz, archivePath, name);
+        resourceSet.recordCacheAccess(content != null);
+        if (content == null) {
+            JarInputStreamWrapper wrapper = getUncachedInputStreamWrapper();
+            if (wrapper == null) {
+                return null;
+            }
+            try (InputStream is = wrapper) {
+                content = is.readAllBytes();
+            } catch (IOException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("jarResource.getInputStreamFail",
+                            name, getBaseUrl()), e);
+                }
+                return null;
+            }
+            cache.put(biz, archivePath, name, content);
+        }
+        return new DirectInputStreamWrapper(getResource(), new ByteArrayInputStream(content));
+    }
+
+    private JarInputStreamWrapper getUncachedInputStreamWrapper() {
+        NestedMetrics.Recorder metrics = NestedMetrics.getRecorder();
+        if (metrics == null) {
+            return openInputStreamWrapper();
+        }
+        long start = System.nanoTime();
+        JarInputStreamWrapper wrapper = openInputStreamWrapper();
+        if (wrapper == null) {
+            return null;
+        }
+        return new MeteredInputStreamWrapper(wrapper, metrics, System.nanoTime() - start);
+    }
+
+    private JarInputStreamWrapper openInputStreamWrapper() {
+        JarWarResourceSet resourceSet = (JarWarResourceSet) getArchiveResourceSet();
+        NestedJarIndex index = resourceSet.getEntryIndex();
+        if (index != null && index.getEntry(getResource().getName()) != null) {
+            FileArchiveSource nestedSource = resourceSet.getNestedArchiveSource();
+            if (nestedSource != null) {
+                return getDirectInputStreamWrapper(nestedSource, index);
+            }
+            return getIndexedInputStreamWrapper(resourceSet, index);
+        }
+
         JarFile warFile = null;
         JarInputStream jarIs = null;
         JarEntry entry = null;
@@ -57,32 +180,23 @@ public class JarWarResource extends AbstractArchiveResource {
             // 模块执行到此处，拿到的 warFile 是基座的，但 archivePath 是 BOOT-INF/classes/SOFA-ARK/biz/module-ark-biz.jar!/lib/module-support.jar
             // 将无法拿到正确的目录
             // 修改：通过先获取到模块jar，即 warFile 是模块，再拆分出 lib/module-support.jar 为 archivePath，从而拿到依赖jar的资源目录
-            InputStream isInWar;
-            String archivePathTemp = archivePath;
-            if (archivePathTemp.indexOf("!/") > 0) {
-                String base = getBase();
-                int directoryIndex = archivePathTemp.lastIndexOf("!/");
-                int realArchivePathStart = directoryIndex + 2;
-                archivePathTemp = archivePath.substring(realArchivePathStart);
-                String warPath = "jar:file:" + base + "!/" + archivePath.substring(0, directoryIndex) + "!/";
-                URL url = new URL(warPath);
-                JarURLConnection connection = (JarURLConnection) url.openConnection();
-                warFile = connection.getJarFile();
-                JarEntry jarFileInWar = warFile.getJarEntry(archivePathTemp);
-                isInWar = warFile.getInputStream(jarFileInWar);
-            } else {
-                // else 块为 源码
-                warFile = getArchiveResourceSet().openJarFile();
-                JarEntry jarFileInWar = warFile.getJarEntry(archivePath);
-                isInWar = warFile.getInputStream(jarFileInWar);
-            }
+            // 模块 jar 由 openJarFile() 从共享句柄池获取
+            warFile = resourceSet.openJarFile();
+            JarEntry jarFileInWar = warFile.getJarEntry(resourceSet.getPathInContainer());
+            InputStream isInWar = warFile.getInputStream(jarFileInWar);
 
             jarIs = new JarInputStream(isInWar);
+            int skipped = 0;
             entry = jarIs.getNextJarEntry();
             while (entry != null &&
                     !entry.getName().equals(getResource().getName())) {
+                skipped++;
                 entry = jarIs.getNextJarEntry();
             }
+            NestedMetrics.Recorder metrics = NestedMetrics.getRecorder();
+            if (metrics != null) {
+                metrics.entriesSkipped(resourceSet.getBizKey(), archivePath, skipped);
+            }
 
             if (entry == null) {
                 return null;
@@ -113,8 +227,135 @@ public class JarWarResource extends AbstractArchiveResource {
         }
     }
 
+    /**
+     * Reads this resource with positioned reads on the outer file. No archive
+     * is opened; the returned stream only holds the channel the handle pool
+     * shares for the outer file.
+     */
+    private JarInputStreamWrapper getDirectInputStreamWrapper(FileArchiveSource nestedSource,
+            NestedJarIndex index) {
+        try {
+            InputStream is = index.getInputStream(nestedSource, getResource().getName());
+            return new DirectInputStreamWrapper(getResource(), is);
+        } catch (IOException e) {
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("jarResource.getInputStreamFail",
+                        getResource().getName(), getBaseUrl()), e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Seeks straight to the local header of this resource in the nested JAR
+     * and inflates only this entry.
+     */
+    private JarInputStreamWrapper getIndexedInputStreamWrapper(JarWarResourceSet resourceSet,
+            NestedJarIndex index) {
+        JarFile warFile = null;
+        try {
+            warFile = resourceSet.openJarFile();
+            JarEntry jarFileInWar = warFile.getJarEntry(resourceSet.getPathInContainer());
+            InputStream is = index.getInputStream(
+                    new JarEntryArchiveSource(warFile, jarFileInWar), getResource().getName());
+            return new JarInputStreamWrapper(getResource(), is);
+        } catch (IOException e) {
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("jarResource.getInputStreamFail",
+                        getResource().getName(), getBaseUrl()), e);
+            }
+            if (warFile != null) {
+                resourceSet.closeJarFile();
+            }
+            return null;
+        }
+    }
+
     @Override
     protected Log getLog() {
         return log;
     }
+
+
+    /**
+     * Wrapper that reports the time spent opening and reading this resource,
+     * and the number of bytes read, once closed.
+     */
+    private class MeteredInputStreamWrapper extends JarInputStreamWrapper {
+
+        private final JarInputStreamWrapper wrapper;
+        private final NestedMetrics.Recorder metrics;
+        private long nanos;
+        private long bytes;
+        private boolean closed;
+
+        MeteredInputStreamWrapper(JarInputStreamWrapper wrapper, NestedMetrics.Recorder metrics,
+                long openNanos) {
+            super(getResource(), wrapper);
+            this.wrapper = wrapper;
+            this.metrics = metrics;
+            this.nanos = openNanos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = wrapper.read();
+            nanos += System.nanoTime() - start;
+            if (b >= 0) {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b) throws IOException {
+            return read(b, 0, b.length);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            int n = wrapper.read(b, off, len);
+            nanos += System.nanoTime() - start;
+            if (n > 0) {
+                bytes += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                wrapper.close();
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    JarWarResourceSet resourceSet = (JarWarResourceSet) getArchiveResourceSet();
+                    metrics.entryRead(resourceSet.getBizKey(), archivePath, nanos, bytes);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Wrapper for streams that were not obtained via
+     * {@link AbstractArchiveResourceSet#openJarFile()} and so must not release
+     * an archive handle when closed.
+     */
+    private class DirectInputStreamWrapper extends JarInputStreamWrapper {
+
+        private final InputStream is;
+
+        DirectInputStreamWrapper(JarEntry jarEntry, InputStream is) {
+            super(jarEntry, is);
+            this.is = is;
+        }
+
+        @Override
+        public void close() throws IOException {
+            is.close();
+        }
+    }
 }
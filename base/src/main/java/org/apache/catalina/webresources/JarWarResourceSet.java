@@ -1,21 +1,43 @@
 package org.apache.catalina.webresources;
 
+import com.tt.nested.ArchiveSource;
+import com.tt.nested.CompactEntryTable;
+import com.tt.nested.FileArchiveSource;
+import com.tt.nested.JarEntryArchiveSource;
+import com.tt.nested.NestedArchiveResolver;
+import com.tt.nested.NestedJarFilePool;
+import com.tt.nested.NestedJarIndex;
+import com.tt.nested.NestedJarIndexRegistry;
+import com.tt.nested.NestedMetrics;
+import com.tt.nested.NestedReleaseRegistry;
 import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleState;
 import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.buf.UriUtil;
 import org.apache.tomcat.util.compat.JreCompat;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.JarURLConnection;
 import java.net.MalformedURLException;
-import java.net.URL;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
@@ -28,8 +50,50 @@ import java.util.jar.Manifest;
  */
 public class JarWarResourceSet extends AbstractArchiveResourceSet {
 
+    private static final Log log = LogFactory.getLog(JarWarResourceSet.class);
+
+    /**
+     * System property that, when {@code true}, builds the entry table of the
+     * nested JAR while the set is initialised rather than on the first
+     * lookup.
+     */
+    public static final String EAGER_ENTRIES_PROPERTY = "koupleless.nested.entries.eager";
+
+    // 所有已初始化的资源集，供 actuator 端点查看；弱引用，模块卸载后随上下文回收
+    private static final Set<JarWarResourceSet> instances =
+            Collections.newSetFromMap(Collections.synchronizedMap(new WeakHashMap<>()));
+
+    static {
+        NestedReleaseRegistry.register(JarWarResourceSet::releaseBiz);
+    }
+
     private final String archivePath;
 
+    private volatile FileArchiveSource nestedArchiveSource;
+    private volatile boolean nestedArchiveResolved = false;
+
+    private volatile Map<String,JarEntry> archiveEntriesSnapshot;
+    private final AtomicReference<CompletableFuture<Map<String,JarEntry>>> archiveEntriesBuild =
+            new AtomicReference<>();
+
+    private volatile String bizKey;
+
+    // 所属模块已卸载；之后的查找不再从共享索引注册表获取引用，避免无人释放
+    private volatile boolean bizReleased = false;
+
+    private volatile NestedJarIndex entryIndex;
+    private volatile boolean entryIndexFailed = false;
+    // 从共享索引注册表获取索引时嵌套 jar 的大小与 CRC，释放时使用
+    private long sharedIndexSize = -1;
+    private long sharedIndexCrc = -1;
+    // 已设置 manifest 的索引，条目表由同一索引生成时不再重复解析
+    private volatile NestedJarIndex manifestIndex;
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private volatile long lastBuildTime = -1;
+    private volatile long lastBuildNanos = -1;
+
     /**
      * Creates a new {@link org.apache.catalina.WebResourceSet} based on a JAR
      * file that is nested inside a WAR.
@@ -82,11 +146,283 @@ public class JarWarResourceSet extends AbstractArchiveResourceSet {
      * <p>
      * JarWar can't optimise for a single resource so the Map is always
      * returned.
+     * <p>
+     * The Map is published as an immutable snapshot once built so that
+     * reading it takes no lock. Only one thread builds it; concurrent callers
+     * wait for that build.
      */
     @Override
     protected Map<String,JarEntry> getArchiveEntries(boolean single) {
+        while (true) {
+            Map<String,JarEntry> entries = archiveEntriesSnapshot;
+            if (entries != null) {
+                return entries;
+            }
+            CompletableFuture<Map<String,JarEntry>> build = archiveEntriesBuild.get();
+            if (build == null) {
+                CompletableFuture<Map<String,JarEntry>> created = new CompletableFuture<>();
+                if (!archiveEntriesBuild.compareAndSet(null, created)) {
+                    continue;
+                }
+                try {
+                    long start = System.nanoTime();
+                    entries = loadArchiveEntries();
+                    long nanos = System.nanoTime() - start;
+                    lastBuildNanos = nanos;
+                    lastBuildTime = System.currentTimeMillis();
+                    NestedMetrics.Recorder metrics = NestedMetrics.getRecorder();
+                    if (metrics != null) {
+                        metrics.entryTableBuilt(getBizKey(), archivePath, nanos, entries.size());
+                    }
+                    if (!(entries instanceof CompactEntryTable)) {
+                        entries = Collections.unmodifiableMap(entries);
+                    }
+                    synchronized (archiveLock) {
+                        // 构建期间 releaseIndex() 已丢弃本次构建的，不再发布
+                        if (archiveEntriesBuild.get() == created) {
+                            archiveEntriesSnapshot = entries;
+                        }
+                    }
+                    created.complete(entries);
+                    return entries;
+                } catch (RuntimeException | Error e) {
+                    // 构建失败时允许后续请求重新构建
+                    archiveEntriesBuild.compareAndSet(created, null);
+                    created.completeExceptionally(e);
+                    throw e;
+                }
+            }
+            try {
+                return build.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+
+    /**
+     * Drops the entry table and the offset index of the nested JAR and
+     * builds them again, e.g. after the JAR was found to be indexed slowly.
+     * Readers holding the previous table keep using it.
+     */
+    public void rebuildIndex() {
+        releaseIndex();
+        getArchiveEntries(false);
+    }
+
+
+    /**
+     * Drops the entry table and the offset index of the nested JAR. They are
+     * built again on the next lookup.
+     */
+    public void releaseIndex() {
+        synchronized (archiveLock) {
+            archiveEntriesSnapshot = null;
+            archiveEntriesBuild.set(null);
+            archiveEntries = null;
+            entryIndex = null;
+            entryIndexFailed = false;
+            NestedJarIndexRegistry.getInstance().release(getPathInContainer(), sharedIndexSize, sharedIndexCrc);
+            sharedIndexSize = -1;
+            sharedIndexCrc = -1;
+            manifestIndex = null;
+            nestedArchiveSource = null;
+            nestedArchiveResolved = false;
+        }
+    }
+
+
+    /*
+     * 模块卸载后其 context 可能仍被引用一段时间，主动释放其资源集的条目表及索引
+     */
+    private static int releaseBiz(String bizKey) {
+        List<JarWarResourceSet> released = new ArrayList<>();
+        synchronized (instances) {
+            Iterator<JarWarResourceSet> iter = instances.iterator();
+            while (iter.hasNext()) {
+                JarWarResourceSet resourceSet = iter.next();
+                if (NestedReleaseRegistry.isWithin(resourceSet.getBizKey(), bizKey)) {
+                    iter.remove();
+                    released.add(resourceSet);
+                }
+            }
+        }
+        for (JarWarResourceSet resourceSet : released) {
+            resourceSet.bizReleased = true;
+            resourceSet.releaseIndex();
+        }
+        return released.size();
+    }
+
+
+    /**
+     * Builds the entry table and the offset index of the nested JAR now
+     * rather than on the first lookup, e.g. while the biz is starting. Does
+     * nothing if they are built already.
+     */
+    public void prepareIndex() {
+        getArchiveEntries(false);
+        getEntryIndex();
+    }
+
+
+    /**
+     * @return the resource sets that have been initialised and not yet
+     *         destroyed
+     */
+    public static List<JarWarResourceSet> getInstances() {
+        List<JarWarResourceSet> result;
+        synchronized (instances) {
+            result = new ArrayList<>(instances);
+        }
+        result.removeIf((resourceSet) -> resourceSet.getState() == LifecycleState.DESTROYING ||
+                resourceSet.getState() == LifecycleState.DESTROYED);
+        return result;
+    }
+
+
+    /**
+     * @return the path within the web application at which this set is
+     *         mounted
+     */
+    public String getMountPoint() {
+        return getWebAppMount();
+    }
+
+
+    /**
+     * @return the absolute path of the file on disk that contains the nested
+     *         JAR
+     */
+    public String getArchiveFile() {
+        return getBase();
+    }
+
+
+    /**
+     * @return the path of the nested JAR within {@link #getArchiveFile()}
+     */
+    public String getArchivePath() {
+        return archivePath;
+    }
+
+
+    /**
+     * @return the number of entries of the nested JAR or -1 if its entry
+     *         table has not been built yet
+     */
+    public int getEntryCount() {
+        Map<String,JarEntry> entries = archiveEntriesSnapshot;
+        return entries == null ? -1 : entries.size();
+    }
+
+
+    /**
+     * @return an estimate of the heap retained by the entry table and the
+     *         offset index of the nested JAR, in bytes
+     */
+    public long getEstimatedHeapSize() {
+        long heapSize = 0;
+        NestedJarIndex index = entryIndex;
+        if (index != null) {
+            heapSize += index.estimateHeapSize();
+        }
+        Map<String,JarEntry> entries = archiveEntriesSnapshot;
+        if (entries instanceof CompactEntryTable) {
+            // 使用构建时索引的条目表时与索引共用同一份
+            if (index == null || index.getEntryTable() != entries) {
+                heapSize += ((CompactEntryTable) entries).estimateHeapSize();
+            }
+        } else if (entries != null) {
+            heapSize += CompactEntryTable.copyOf(entries).estimateHeapSize();
+        }
+        return heapSize;
+    }
+
+
+    /**
+     * @return the number of reads of this set served from the nested content
+     *         cache
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+
+    /**
+     * @return the number of reads of this set that could have been served
+     *         from the nested content cache but were not
+     */
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+
+    void recordCacheAccess(boolean hit) {
+        if (hit) {
+            cacheHits.increment();
+        } else {
+            cacheMisses.increment();
+        }
+    }
+
+
+    /**
+     * @return the number of users of the shared handle of the archive that
+     *         contains the nested JAR, or -1 if no such handle is open
+     */
+    public int getOpenHandles() {
+        return NestedJarFilePool.getInstance().getUseCount(getBizKey());
+    }
+
+
+    /**
+     * @return when the entry table was last built, in milliseconds since the
+     *         epoch, or -1 if it has not been built
+     */
+    public long getLastBuildTime() {
+        return lastBuildTime;
+    }
+
+
+    /**
+     * @return how long the entry table took to build the last time, in
+     *         nanoseconds, or -1 if it has not been built
+     */
+    public long getLastBuildNanos() {
+        return lastBuildNanos;
+    }
+
+
+    private Map<String,JarEntry> loadArchiveEntries() {
         synchronized (archiveLock) {
             if (archiveEntries == null) {
+                // 模块构建时已写入索引的，直接按索引生成条目，无需解压整个 jar
+                NestedJarIndex index = getEntryIndex();
+                if (index != null && index.hasManifestInfo()) {
+                    try {
+                        applyManifest(index);
+                        if (index.getMultiRelease().booleanValue() && JreCompat.isJre9Available()) {
+                            archiveEntries = index.toJarEntries();
+                            processArchivesEntriesForMultiRelease();
+                            archiveEntries = CompactEntryTable.copyOf(archiveEntries);
+                        } else {
+                            // 直接使用索引中的紧凑条目表，不再逐条创建 JarEntry
+                            archiveEntries = index.getEntryTable();
+                        }
+                        return archiveEntries;
+                    } catch (IOException ioe) {
+                        archiveEntries = null;
+                        if (log.isDebugEnabled()) {
+                            log.debug("Unable to use resource index of nested JAR [" + archivePath +
+                                    "] in [" + getBase() + "], falling back to streaming", ioe);
+                        }
+                    }
+                }
                 JarFile warFile = null;
                 InputStream jarFileIs = null;
                 archiveEntries = new HashMap<>();
@@ -96,26 +432,14 @@ public class JarWarResourceSet extends AbstractArchiveResourceSet {
                     // 模块执行到此处，拿到的 warFile 是基座的，但 archivePath 是 BOOT-INF/classes/SOFA-ARK/biz/module-ark-biz.jar!/lib/module-support.jar
                     // 将无法拿到正确的目录
                     // 修改：通过先获取到模块jar，即 warFile 是模块，再拆分出 lib/module-support.jar 为 archivePath，从而拿到依赖jar的资源目录
-                    String archivePathTemp = archivePath;
-                    if (archivePathTemp.indexOf("!/") > 0) {
-                        String base = getBase();
-                        int directoryIndex = archivePathTemp.lastIndexOf("!/");
-                        int realArchivePathStart = directoryIndex + 2;
-                        archivePathTemp = archivePath.substring(realArchivePathStart);
-                        String warPath = "jar:file:" + base + "!/" + archivePath.substring(0, directoryIndex) + "!/";
-                        try {
-                            URL url = new URL(warPath);
-                            JarURLConnection connection = (JarURLConnection) url.openConnection();
-                            warFile = connection.getJarFile();
-                            JarEntry jarFileInWar = warFile.getJarEntry(archivePathTemp);
-                            jarFileIs = warFile.getInputStream(jarFileInWar);
-                        } catch (Exception e) {
-                            throw new IllegalArgumentException(e);
-                        }
+                    // 模块 jar 由 openJarFile() 从共享句柄池获取
+                    // 各层 jar 均为 STORED 时，直接按绝对偏移量读取基座文件，不再经过 JarURLConnection
+                    FileArchiveSource nestedSource = getNestedArchiveSource();
+                    if (nestedSource != null) {
+                        jarFileIs = nestedSource.openStream(0, nestedSource.length());
                     } else {
-                        // else 块为 源码
                         warFile = openJarFile();
-                        JarEntry jarFileInWar = warFile.getJarEntry(archivePath);
+                        JarEntry jarFileInWar = warFile.getJarEntry(getPathInContainer());
                         jarFileIs = warFile.getInputStream(jarFileInWar);
                     }
 
@@ -151,6 +475,8 @@ public class JarWarResourceSet extends AbstractArchiveResourceSet {
                     if (multiRelease) {
                         processArchivesEntriesForMultiRelease();
                     }
+                    // 条目数多的模块 jar 中 HashMap<String,JarEntry> 占用大量堆，转为紧凑条目表
+                    archiveEntries = CompactEntryTable.copyOf(archiveEntries);
                 } catch (IOException ioe) {
                     // Should never happen
                     archiveEntries = null;
@@ -173,6 +499,219 @@ public class JarWarResourceSet extends AbstractArchiveResourceSet {
     }
 
 
+    /**
+     * Obtain the offset index of the nested JAR. The sidecar index written
+     * when the module was built is preferred; otherwise the index is built
+     * from the JAR's central directory on first use so that individual
+     * entries can be read without streaming over the entries in front of
+     * them.
+     * <p>
+     * The index is shared through {@link NestedJarIndexRegistry} with every
+     * other resource set, of any biz, for a JAR of the same name, size and
+     * CRC, and is released by {@link #releaseIndex()}. Once the biz of this
+     * set has been released the index is no longer shared, so that a late
+     * lookup does not hold a reference nothing releases.
+     *
+     * @return the index or {@code null} if the nested JAR could not be
+     *         indexed, in which case callers must stream the JAR instead
+     */
+    NestedJarIndex getEntryIndex() {
+        NestedJarIndex index = entryIndex;
+        if (index != null || entryIndexFailed) {
+            return index;
+        }
+        synchronized (archiveLock) {
+            if (entryIndex == null && !entryIndexFailed) {
+                JarFile warFile = null;
+                try {
+                    FileArchiveSource nestedSource = getNestedArchiveSource();
+                    ArchiveSource source = nestedSource;
+                    long size;
+                    long crc;
+                    if (nestedSource != null) {
+                        size = nestedSource.length();
+                        crc = nestedSource.getCrc();
+                    } else {
+                        warFile = openJarFile();
+                        JarEntry jarFileInWar = warFile.getJarEntry(getPathInContainer());
+                        source = new JarEntryArchiveSource(warFile, jarFileInWar);
+                        size = jarFileInWar.getSize();
+                        crc = jarFileInWar.getCrc();
+                    }
+                    if (bizReleased) {
+                        entryIndex = loadIndex(source);
+                    } else {
+                        ArchiveSource indexSource = source;
+                        entryIndex = NestedJarIndexRegistry.getInstance().acquire(getPathInContainer(), size, crc,
+                                () -> loadIndex(indexSource));
+                        sharedIndexSize = size;
+                        sharedIndexCrc = crc;
+                    }
+                } catch (IOException ioe) {
+                    entryIndexFailed = true;
+                    if (log.isDebugEnabled()) {
+                        log.debug("Unable to index nested JAR [" + archivePath + "] in [" +
+                                getBase() + "], falling back to streaming", ioe);
+                    }
+                } finally {
+                    if (warFile != null) {
+                        closeJarFile();
+                    }
+                }
+            }
+            return entryIndex;
+        }
+    }
+
+
+    /*
+     * 只在注册表中尚无该 jar 的索引时调用；连同 manifest 一起构建，其它模块无需再读取
+     */
+    private NestedJarIndex loadIndex(ArchiveSource source) throws IOException {
+        NestedJarIndex index = loadSidecarIndex();
+        if (index != null) {
+            return index;
+        }
+        return NestedJarIndex.buildWithManifest(source);
+    }
+
+
+    /**
+     * Load the sidecar index written for the nested JAR by the module build.
+     *
+     * @return the index or {@code null} if the container has no index for
+     *         the nested JAR or the index does not match the JAR's content
+     */
+    private NestedJarIndex loadSidecarIndex() {
+        String pathInContainer = getPathInContainer();
+        JarFile containerFile = null;
+        try {
+            FileArchiveSource container = NestedArchiveResolver.resolve(Paths.get(getBase()), getContainerPath());
+            if (container != null) {
+                return NestedJarIndex.loadSidecar(container, pathInContainer);
+            }
+            // 模块 jar 在基座中被压缩时，通过 JarFile 读取索引
+            containerFile = openJarFile();
+            JarEntry sidecar = containerFile.getJarEntry(NestedJarIndex.getSidecarName(pathInContainer));
+            JarEntry jarFileInWar = containerFile.getJarEntry(pathInContainer);
+            if (sidecar == null || jarFileInWar == null) {
+                return null;
+            }
+            try (InputStream is = containerFile.getInputStream(sidecar)) {
+                return NestedJarIndex.readSidecar(is, jarFileInWar.getSize(), jarFileInWar.getCrc());
+            }
+        } catch (IOException | InvalidPathException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to load resource index of nested JAR [" + archivePath + "] in [" +
+                        getBase() + "]", e);
+            }
+            return null;
+        } finally {
+            if (containerFile != null) {
+                closeJarFile();
+            }
+        }
+    }
+
+
+    /**
+     * Resolve the absolute position of the nested JAR within the file on
+     * disk. This succeeds when the nested JAR and every archive enclosing it
+     * are STORED, whatever the nesting depth.
+     *
+     * @return the nested JAR or {@code null} if a layer is compressed, in
+     *         which case callers must stream it via its container
+     */
+    FileArchiveSource getNestedArchiveSource() {
+        if (nestedArchiveResolved) {
+            return nestedArchiveSource;
+        }
+        synchronized (archiveLock) {
+            if (!nestedArchiveResolved) {
+                try {
+                    nestedArchiveSource = NestedArchiveResolver.resolve(Paths.get(getBase()), archivePath);
+                } catch (IOException | InvalidPathException e) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Unable to resolve nested JAR [" + archivePath + "] in [" +
+                                getBase() + "], falling back to streaming", e);
+                    }
+                }
+                nestedArchiveResolved = true;
+            }
+            return nestedArchiveSource;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Opens the archive that directly contains the nested JAR. For a module
+     * dependency deployed in the base this is the module JAR rather than the
+     * base JAR, which is shared with every other reader through
+     * {@link NestedJarFilePool}.
+     */
+    @Override
+    protected JarFile openJarFile() throws IOException {
+        String containerPath = getContainerPath();
+        if (containerPath.isEmpty()) {
+            return super.openJarFile();
+        }
+        return NestedJarFilePool.getInstance().acquire(getBase(), containerPath);
+    }
+
+
+    @Override
+    protected void closeJarFile() {
+        String containerPath = getContainerPath();
+        if (containerPath.isEmpty()) {
+            super.closeJarFile();
+        } else {
+            NestedJarFilePool.getInstance().release(getBase(), containerPath);
+        }
+    }
+
+
+    /**
+     * @return the path within the base of the archive that directly contains
+     *         the nested JAR, or the empty string if that is the base itself
+     */
+    String getContainerPath() {
+        int directoryIndex = archivePath.lastIndexOf("!/");
+        if (directoryIndex > 0) {
+            return archivePath.substring(0, directoryIndex);
+        }
+        return "";
+    }
+
+
+    /**
+     * @return the key of the biz archive that contains the nested JAR, used
+     *         to apply the per-biz limit of the nested content cache
+     */
+    public String getBizKey() {
+        String bizKey = this.bizKey;
+        if (bizKey == null) {
+            bizKey = NestedJarFilePool.getKey(getBase(), getContainerPath());
+            this.bizKey = bizKey;
+        }
+        return bizKey;
+    }
+
+
+    /**
+     * @return the path of the nested JAR within the archive returned by
+     *         {@link #openJarFile()}
+     */
+    String getPathInContainer() {
+        int directoryIndex = archivePath.lastIndexOf("!/");
+        if (directoryIndex > 0) {
+            return archivePath.substring(directoryIndex + 2);
+        }
+        return archivePath;
+    }
+
+
     protected void processArchivesEntriesForMultiRelease() {
 
         int targetVersion = JreCompat.getInstance().jarFileRuntimeMajorVersion();
@@ -246,26 +785,51 @@ public class JarWarResourceSet extends AbstractArchiveResourceSet {
     //-------------------------------------------------------- Lifecycle methods
     @Override
     protected void initInternal() throws LifecycleException {
+        instances.add(this);
+
+        // 一次读取中央目录即得到 manifest、多版本信息与条目表，之后建立条目表时直接复用，无需再流式读取
+        if (initFromIndex()) {
+            try {
+                setBaseUrl(UriUtil.buildJarSafeUrl(new File(getBase())));
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException(e);
+            }
+            return;
+        }
+
+        FileArchiveSource nestedSource = getNestedArchiveSource();
+        if (nestedSource != null) {
+            // 各层 jar 均为 STORED 时，直接按绝对偏移量读取基座文件
+            try (JarInputStream jarIs = new JarInputStream(
+                    nestedSource.openStream(0, nestedSource.length()))) {
+                setManifest(jarIs.getManifest());
+            } catch (IOException ioe) {
+                throw new IllegalArgumentException(ioe);
+            }
 
-        String archivePathTemp = archivePath;
+            try {
+                setBaseUrl(UriUtil.buildJarSafeUrl(new File(getBase())));
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException(e);
+            }
+            return;
+        }
         // 兼容基座部署模块，模块依赖的包能够加载到所依赖jar的资源目录
         // 模块执行到此处，拿到的 warFile 是基座的，但 archivePath 是 BOOT-INF/classes/SOFA-ARK/biz/module-ark-biz.jar!/lib/module-support.jar
         // 将无法拿到正确的目录
         // 修改：通过先获取到模块jar，即 warFile 是模块，再拆分出 lib/module-support.jar 为 archivePath，从而拿到依赖jar的资源目录
-        if (archivePathTemp.indexOf("!/") > 0) {
-            String base = getBase();
-            int directoryIndex = archivePathTemp.lastIndexOf("!/");
-            int realArchivePathStart = directoryIndex + 2;
-            archivePathTemp = archivePath.substring(realArchivePathStart);
-            String warPath = "jar:file:" + base + "!/" + archivePath.substring(0, directoryIndex) + "!/";
+        // 模块 jar 由 openJarFile() 从共享句柄池获取
+        if (!getContainerPath().isEmpty()) {
             try {
-                URL url = new URL(warPath);
-                JarURLConnection connection = (JarURLConnection) url.openConnection();
-                JarFile warFile = connection.getJarFile();
-                JarEntry jarFileInWar = warFile.getJarEntry(archivePathTemp);
-                InputStream jarFileIs = warFile.getInputStream(jarFileInWar);
-                try (JarInputStream jarIs = new JarInputStream(jarFileIs)) {
-                    setManifest(jarIs.getManifest());
+                JarFile warFile = openJarFile();
+                try {
+                    JarEntry jarFileInWar = warFile.getJarEntry(getPathInContainer());
+                    InputStream jarFileIs = warFile.getInputStream(jarFileInWar);
+                    try (JarInputStream jarIs = new JarInputStream(jarFileIs)) {
+                        setManifest(jarIs.getManifest());
+                    }
+                } finally {
+                    closeJarFile();
                 }
             } catch (Exception e) {
                 throw new IllegalArgumentException(e);
@@ -298,6 +862,38 @@ public class JarWarResourceSet extends AbstractArchiveResourceSet {
     }
 
 
+    /*
+     * 由共享索引设置 manifest；索引未记录 manifest 或不可用时返回 false，由调用方流式读取
+     */
+    private boolean initFromIndex() {
+        NestedJarIndex index = getEntryIndex();
+        if (index == null || !index.hasManifestInfo()) {
+            return false;
+        }
+        try {
+            applyManifest(index);
+        } catch (IOException ioe) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to use resource index of nested JAR [" + archivePath + "] in [" +
+                        getBase() + "], falling back to streaming", ioe);
+            }
+            return false;
+        }
+        if (Boolean.getBoolean(EAGER_ENTRIES_PROPERTY)) {
+            getArchiveEntries(false);
+        }
+        return true;
+    }
+
+
+    private void applyManifest(NestedJarIndex index) throws IOException {
+        if (manifestIndex != index) {
+            setManifest(index.getManifest());
+            manifestIndex = index;
+        }
+    }
+
+
     private static final class VersionedJarEntry {
         private final int version;
         private final JarEntry jarEntry;
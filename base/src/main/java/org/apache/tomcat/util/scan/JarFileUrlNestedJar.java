@@ -1,10 +1,22 @@
 package org.apache.tomcat.util.scan;
 
+import com.tt.nested.FileArchiveSource;
+import com.tt.nested.NestedArchiveResolver;
+import com.tt.nested.NestedJarFilePool;
+import com.tt.nested.NestedJarScanCache;
+import com.tt.nested.NestedJarScanCache.ScannedJar;
+
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.JarURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Iterator;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
 /**
  * Implementation of {@link org.apache.tomcat.Jar} that is optimised for file
@@ -15,12 +27,60 @@ public class JarFileUrlNestedJar extends AbstractInputStreamJar {
 
     private final JarFile warFile;
     private final JarEntry jarEntry;
+    // 各层 jar 均为 STORED 时，嵌套 jar 在最外层文件中的绝对位置，此时不再打开 warFile
+    private final FileArchiveSource nestedSource;
+    // 通过共享句柄池获取 warFile 时，归还句柄所需的路径
+    private final String containerBase;
+    private final String containerPath;
+    private boolean released = false;
+    // 按 jar 内容（外层中央目录记录的大小与 CRC）共享的扫描结果，所有模块的 TLD 扫描共用
+    private ScannedJar scannedJar;
+    private boolean scanResolved = false;
+    private Iterator<String> scannedNames;
+    private String scannedName;
+    // 读取非描述文件条目时仍按原逻辑遍历 jar 流，此时 reset 需重新打开流
+    private boolean streaming = false;
 
     public JarFileUrlNestedJar(URL url) throws IOException {
         super(url);
-        JarURLConnection jarConn = (JarURLConnection) url.openConnection();
-        jarConn.setUseCaches(false);
-        warFile = jarConn.getJarFile();
+        FileArchiveSource source = null;
+        try {
+            source = NestedArchiveResolver.resolve(url);
+        } catch (IOException e) {
+            // Fall back to JarURLConnection
+        }
+        nestedSource = source;
+        if (nestedSource != null) {
+            warFile = null;
+            jarEntry = null;
+            containerBase = null;
+            containerPath = null;
+            return;
+        }
+
+        // 模块 jar 从共享句柄池获取，与 JarWarResourceSet 共用
+        String urlAsStringForPool = url.toString();
+        int outerEnd = urlAsStringForPool.indexOf("!/");
+        int innerStart = urlAsStringForPool.lastIndexOf("!/");
+        String poolBase = null;
+        if (urlAsStringForPool.startsWith("jar:file:") && outerEnd > 0) {
+            try {
+                poolBase = new File(new URI(urlAsStringForPool.substring(4, outerEnd))).getPath();
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                // Fall back to JarURLConnection
+            }
+        }
+        if (poolBase != null) {
+            containerBase = poolBase;
+            containerPath = innerStart > outerEnd ? urlAsStringForPool.substring(outerEnd + 2, innerStart) : "";
+            warFile = NestedJarFilePool.getInstance().acquire(containerBase, containerPath);
+        } else {
+            containerBase = null;
+            containerPath = null;
+            JarURLConnection jarConn = (JarURLConnection) url.openConnection();
+            jarConn.setUseCaches(false);
+            warFile = jarConn.getJarFile();
+        }
 
         // origin code:
         // String urlAsString = url.toString();
@@ -45,7 +105,12 @@ public class JarFileUrlNestedJar extends AbstractInputStreamJar {
     @Override
     public void close() {
         closeStream();
-        if (warFile != null) {
+        if (containerBase != null) {
+            if (!released) {
+                released = true;
+                NestedJarFilePool.getInstance().release(containerBase, containerPath);
+            }
+        } else if (warFile != null) {
             try {
                 warFile.close();
             } catch (IOException e) {
@@ -55,8 +120,150 @@ public class JarFileUrlNestedJar extends AbstractInputStreamJar {
     }
 
 
+    @Override
+    public void nextEntry() {
+        ScannedJar scanned = getScannedJar();
+        if (scanned == null) {
+            super.nextEntry();
+            return;
+        }
+        if (scannedNames == null) {
+            scannedNames = scanned.getEntries().keySet().iterator();
+        }
+        scannedName = scannedNames.hasNext() ? scannedNames.next() : null;
+    }
+
+
+    @Override
+    public String getEntryName() {
+        if (getScannedJar() == null) {
+            return super.getEntryName();
+        }
+        return scannedName;
+    }
+
+
+    @Override
+    public InputStream getEntryInputStream() throws IOException {
+        if (getScannedJar() == null) {
+            return super.getEntryInputStream();
+        }
+        return scannedName == null ? null : getInputStream(scannedName);
+    }
+
+
+    @Override
+    public InputStream getInputStream(String name) throws IOException {
+        ScannedJar scanned = getScannedJar();
+        if (scanned == null) {
+            return super.getInputStream(name);
+        }
+        InputStream descriptor = scanned.getDescriptor(name);
+        if (descriptor != null) {
+            return descriptor;
+        }
+        // 不存在的条目无需再遍历整个 jar
+        if (!scanned.getEntries().containsKey(name)) {
+            return null;
+        }
+        streaming = true;
+        try {
+            return super.getInputStream(name);
+        } finally {
+            streaming = false;
+        }
+    }
+
+
+    @Override
+    public long getLastModified(String name) throws IOException {
+        ScannedJar scanned = getScannedJar();
+        if (scanned == null) {
+            return super.getLastModified(name);
+        }
+        JarEntry entry = scanned.getEntries().get(name);
+        return entry == null ? -1 : entry.getTime();
+    }
+
+
+    @Override
+    public boolean exists(String name) throws IOException {
+        ScannedJar scanned = getScannedJar();
+        if (scanned == null) {
+            return super.exists(name);
+        }
+        return scanned.getEntries().containsKey(name);
+    }
+
+
+    @Override
+    public Manifest getManifest() throws IOException {
+        ScannedJar scanned = getScannedJar();
+        if (scanned == null) {
+            return super.getManifest();
+        }
+        return scanned.getManifest();
+    }
+
+
+    @Override
+    public void reset() throws IOException {
+        if (getScannedJar() == null || streaming) {
+            super.reset();
+            return;
+        }
+        closeStream();
+        scannedNames = null;
+        scannedName = null;
+    }
+
+
+    /*
+     * 首次访问时按内容标识查找扫描结果，未命中则完整读取一遍 jar 并放入共享缓存；
+     * 无法确定内容标识或为多版本 jar 时返回 null，按原逻辑逐次读取
+     */
+    private ScannedJar getScannedJar() {
+        if (scanResolved) {
+            return scannedJar;
+        }
+        scanResolved = true;
+        NestedJarScanCache cache = NestedJarScanCache.getInstance();
+        long size = nestedSource != null ? nestedSource.length() : jarEntry != null ? jarEntry.getSize() : -1;
+        long crc = nestedSource != null ? nestedSource.getCrc() : jarEntry != null ? jarEntry.getCrc() : -1;
+        if (!cache.isEnabled() || size < 0 || crc < 0) {
+            return null;
+        }
+        ScannedJar scanned = cache.get(size, crc);
+        if (scanned == null) {
+            NonClosingJarInputStream jarInputStream = null;
+            try {
+                jarInputStream = createJarInputStream();
+                scanned = ScannedJar.scan(jarInputStream);
+            } catch (IOException e) {
+                return null;
+            } finally {
+                if (jarInputStream != null) {
+                    try {
+                        jarInputStream.reallyClose();
+                    } catch (IOException e) {
+                        // Ignore
+                    }
+                }
+            }
+            cache.put(size, crc, scanned);
+        }
+        if (!scanned.isMultiRelease()) {
+            scannedJar = scanned;
+        }
+        return scannedJar;
+    }
+
+
     @Override
     protected NonClosingJarInputStream createJarInputStream() throws IOException {
+        if (nestedSource != null) {
+            return new NonClosingJarInputStream(nestedSource.openStream(0, nestedSource.length()));
+        }
         return new NonClosingJarInputStream(warFile.getInputStream(jarEntry));
     }
 }
\ No newline at end of file
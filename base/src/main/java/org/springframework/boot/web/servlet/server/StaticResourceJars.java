@@ -1,6 +1,13 @@
 package org.springframework.boot.web.servlet.server;
 
 import com.alipay.sofa.ark.web.embed.tomcat.ArkTomcatEmbeddedWebappClassLoader;
+import com.tt.nested.ArchiveSource;
+import com.tt.nested.FileArchiveSource;
+import com.tt.nested.NestedArchiveResolver;
+import com.tt.nested.NestedJarFilePool;
+import com.tt.nested.NestedMetrics;
+import com.tt.nested.NestedReleaseRegistry;
+import com.tt.nested.ZipCentralDirectory;
 
 import java.io.File;
 import java.io.IOException;
@@ -13,8 +20,14 @@ import java.net.URLClassLoader;
 import java.net.URLConnection;
 import java.nio.file.InvalidPathException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.jar.JarFile;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -26,6 +39,36 @@ import java.util.stream.Stream;
  */
 class StaticResourceJars {
 
+	static final String PARALLEL_PROPERTY = "koupleless.static-resource-jars.parallel";
+
+	static final String PARALLELISM_PROPERTY = "koupleless.static-resource-jars.parallelism";
+
+	private static final String RESOURCES_ENTRY = "META-INF/resources";
+
+	private static final int PARALLEL_THRESHOLD = 8;
+
+	private static final int DEFAULT_MAX_PARALLELISM = 4;
+
+	private static final Map<ProbeKey, Boolean> probeCache = new ConcurrentHashMap<>();
+
+	private static volatile ForkJoinPool probePool;
+
+	static {
+		// 模块卸载后丢弃其 jar 的探测结果，重复部署时不会累积
+		NestedReleaseRegistry.register((bizKey) -> {
+			int released = 0;
+			Iterator<ProbeKey> iterator = probeCache.keySet().iterator();
+			while (iterator.hasNext()) {
+				ProbeKey key = iterator.next();
+				if (key.archiveKey != null && NestedReleaseRegistry.isWithin(key.archiveKey, bizKey)) {
+					iterator.remove();
+					released++;
+				}
+			}
+			return released;
+		});
+	}
+
 	List<URL> getUrls() {
 		// 改造原springboot，兼容koupleless部署无法加载到模块的目录问题
 		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
@@ -43,13 +86,44 @@ class StaticResourceJars {
 	}
 
 	List<URL> getUrlsFrom(URL... urls) {
+		// 多模块共享大部分 jar，探测结果按 jar 路径 + 大小 + 修改时间全局缓存，jar 较多时并行探测
+		boolean[] resourceUrls = new boolean[urls.length];
+		if (urls.length >= PARALLEL_THRESHOLD && Boolean.parseBoolean(System.getProperty(PARALLEL_PROPERTY, "true"))) {
+			getProbePool()
+					.submit(() -> IntStream.range(0, urls.length).parallel()
+							.forEach((i) -> resourceUrls[i] = isResourceUrl(urls[i])))
+					.join();
+		}
+		else {
+			for (int i = 0; i < urls.length; i++) {
+				resourceUrls[i] = isResourceUrl(urls[i]);
+			}
+		}
 		List<URL> resourceJarUrls = new ArrayList<>();
-		for (URL url : urls) {
-			addUrl(resourceJarUrls, url);
+		for (int i = 0; i < urls.length; i++) {
+			if (resourceUrls[i]) {
+				resourceJarUrls.add(urls[i]);
+			}
 		}
 		return resourceJarUrls;
 	}
 
+	private static ForkJoinPool getProbePool() {
+		ForkJoinPool pool = probePool;
+		if (pool == null) {
+			synchronized (StaticResourceJars.class) {
+				pool = probePool;
+				if (pool == null) {
+					int parallelism = Integer.getInteger(PARALLELISM_PROPERTY,
+							Math.min(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_PARALLELISM));
+					pool = new ForkJoinPool(Math.max(parallelism, 1));
+					probePool = pool;
+				}
+			}
+		}
+		return pool;
+	}
+
 	private URL toUrl(String classPathEntry) {
 		try {
 			return new File(classPathEntry).toURI().toURL();
@@ -71,35 +145,113 @@ class StaticResourceJars {
 		}
 	}
 
-	private void addUrl(List<URL> urls, URL url) {
+	private boolean isResourceUrl(URL url) {
 		try {
 			if (!"file".equals(url.getProtocol())) {
-				addUrlConnection(urls, url, url.openConnection());
+				return isResourceUrlConnection(url);
 			}
-			else {
-				File file = toFile(url);
-				if (file != null) {
-					addUrlFile(urls, url, file);
-				}
-				else {
-					addUrlConnection(urls, url, url.openConnection());
-				}
+			File file = toFile(url);
+			if (file == null) {
+				return isResourceUrlConnection(url);
 			}
+			if (file.isDirectory()) {
+				return new File(file, "META-INF/resources").isDirectory();
+			}
+			return probe(ProbeKey.of(file.getAbsolutePath(), NestedJarFilePool.getKey(file.getAbsolutePath(), ""), file),
+					file.getAbsolutePath(), file.getName(),
+					() -> isResourcesJar(file));
 		}
 		catch (IOException ex) {
 			throw new IllegalStateException(ex);
 		}
 	}
 
-	private void addUrlFile(List<URL> urls, URL url, File file) {
-		if ((file.isDirectory() && new File(file, "META-INF/resources").isDirectory()) || isResourcesJar(file)) {
-			urls.add(url);
+	private boolean isResourceUrlConnection(URL url) throws IOException {
+		File outerFile = getOuterFile(url);
+		if (outerFile == null) {
+			return isResourceUrlConnection(url.openConnection());
+		}
+		String archiveKey = NestedJarFilePool.getKey(url);
+		return probe(ProbeKey.of(url.toString(), archiveKey, outerFile), archiveKey, getArchivePath(url),
+				() -> isResourcesNestedJar(url));
+	}
+
+	private boolean isResourcesNestedJar(URL url) throws IOException {
+		// 各层均为 STORED 时直接扫描嵌套 jar 的中央目录，无需经过 JarURLConnection 打开 JarFile
+		String spec = url.toString();
+		if (spec.endsWith("!/")) {
+			spec = spec.substring(0, spec.length() - 2);
+		}
+		FileArchiveSource source = null;
+		try {
+			source = NestedArchiveResolver.resolve(url);
+		}
+		catch (IOException | InvalidPathException ex) {
+			// Fall back to the connection
+		}
+		if (source == null) {
+			return isResourceUrlConnection(url.openConnection());
+		}
+		return spec.endsWith(".jar") && isResourcesJar(source);
+	}
+
+	private boolean isResourceUrlConnection(URLConnection connection) {
+		if (!(connection instanceof JarURLConnection)) {
+			return false;
+		}
+		// 探测后即关闭，不放入 URL 连接缓存，避免卸载后的模块 jar 仍被打开
+		connection.setUseCaches(false);
+		return isResourcesJar((JarURLConnection) connection);
+	}
+
+	private boolean probe(ProbeKey key, String metricsKey, String archivePath, Probe probe) throws IOException {
+		Boolean result = probeCache.get(key);
+		if (result == null) {
+			NestedMetrics.Recorder metrics = NestedMetrics.getRecorder();
+			long start = (metrics != null) ? System.nanoTime() : 0;
+			result = probe.isResourcesJar();
+			if (metrics != null) {
+				metrics.resourceJarProbed(metricsKey, archivePath, System.nanoTime() - start);
+			}
+			probeCache.put(key, result);
 		}
+		return result;
 	}
 
-	private void addUrlConnection(List<URL> urls, URL url, URLConnection connection) {
-		if (connection instanceof JarURLConnection && isResourcesJar((JarURLConnection) connection)) {
-			urls.add(url);
+	/**
+	 * Return the path of the (possibly nested) jar referenced by the given
+	 * {@code jar:file:} URL within the file on disk that contains it.
+	 * @param url the URL
+	 * @return the path, with one {@code "!/"} separator per nesting level
+	 */
+	private String getArchivePath(URL url) {
+		String spec = url.toString();
+		if (spec.endsWith("!/")) {
+			spec = spec.substring(0, spec.length() - 2);
+		}
+		int separator = spec.indexOf("!/");
+		return (separator > 0) ? spec.substring(separator + 2) : spec;
+	}
+
+	/**
+	 * Return the file on disk that contains the (possibly nested) jar
+	 * referenced by the given {@code jar:file:} URL.
+	 * @param url the URL
+	 * @return the outer file or {@code null} if the URL does not reference a
+	 * file on disk
+	 */
+	private File getOuterFile(URL url) {
+		String spec = url.toString();
+		if (!spec.startsWith("jar:file:")) {
+			return null;
+		}
+		int separator = spec.indexOf("!/");
+		try {
+			File file = toFile(new URL((separator > 0) ? spec.substring(4, separator) : spec.substring(4)));
+			return (file != null && file.isFile()) ? file : null;
+		}
+		catch (MalformedURLException | IllegalStateException ex) {
+			return null;
 		}
 	}
 
@@ -113,21 +265,86 @@ class StaticResourceJars {
 	}
 
 	private boolean isResourcesJar(File file) {
+		if (!file.getName().endsWith(".jar")) {
+			return false;
+		}
 		try {
-			return isResourcesJar(new JarFile(file));
+			return isResourcesJar(new FileArchiveSource(file.toPath(), 0, file.length()));
 		}
-		catch (IOException | InvalidPathException ex) {
+		catch (InvalidPathException ex) {
+			return false;
+		}
+	}
+
+	private boolean isResourcesJar(ArchiveSource source) {
+		try {
+			return ZipCentralDirectory.hasEntry(source, RESOURCES_ENTRY);
+		}
+		catch (IOException ex) {
 			return false;
 		}
 	}
 
 	private boolean isResourcesJar(JarFile jar) throws IOException {
 		try {
-			return jar.getName().endsWith(".jar") && (jar.getJarEntry("META-INF/resources") != null);
+			return jar.getName().endsWith(".jar") && (jar.getJarEntry(RESOURCES_ENTRY) != null);
 		}
 		finally {
 			jar.close();
 		}
 	}
 
-}
\ No newline at end of file
+	@FunctionalInterface
+	private interface Probe {
+
+		boolean isResourcesJar() throws IOException;
+
+	}
+
+	/**
+	 * Identity of a probed jar: its location plus the size and modification
+	 * time of the file on disk that holds it. Also records the handle key of
+	 * the jar, by which the results of an uninstalled biz are released.
+	 */
+	private static final class ProbeKey {
+
+		private final String location;
+
+		private final String archiveKey;
+
+		private final long length;
+
+		private final long lastModified;
+
+		private ProbeKey(String location, String archiveKey, long length, long lastModified) {
+			this.location = location;
+			this.archiveKey = archiveKey;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+
+		static ProbeKey of(String location, String archiveKey, File file) {
+			return new ProbeKey(location, archiveKey, file.length(), file.lastModified());
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null || getClass() != obj.getClass()) {
+				return false;
+			}
+			ProbeKey other = (ProbeKey) obj;
+			return this.length == other.length && this.lastModified == other.lastModified
+					&& this.location.equals(other.location);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.location, this.length, this.lastModified);
+		}
+
+	}
+
+}
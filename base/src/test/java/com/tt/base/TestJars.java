@@ -0,0 +1,64 @@
+package com.tt.base;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * Builds the biz and support JARs read by the tests of the base.
+ */
+public final class TestJars {
+
+    private TestJars() {
+    }
+
+    /**
+     * @return a JAR holding the given entries, names at even and contents at
+     *         odd indexes, every entry STORED so that it can be read in place
+     */
+    public static byte[] storedJar(Object... entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JarOutputStream jar = new JarOutputStream(bytes)) {
+            for (int i = 0; i < entries.length; i += 2) {
+                putStored(jar, (String) entries[i], (byte[]) entries[i + 1]);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a JAR the way {@link #storedJar} builds it. The file is replaced
+     * rather than overwritten, so that readers of a previous version keep
+     * reading that version, as they do when a biz is redeployed.
+     */
+    public static Path writeStoredJar(Path file, Object... entries) throws IOException {
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try (OutputStream os = Files.newOutputStream(temp)) {
+            os.write(storedJar(entries));
+        }
+        return Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static long crc(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    private static void putStored(JarOutputStream jar, String name, byte[] content) throws IOException {
+        JarEntry entry = new JarEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCrc(crc(content));
+        jar.putNextEntry(entry);
+        jar.write(content);
+        jar.closeEntry();
+    }
+}
@@ -0,0 +1,210 @@
+package com.tt.base.ark;
+
+import com.alipay.sofa.ark.spi.event.biz.AfterBizStopEvent;
+import com.alipay.sofa.ark.spi.model.Biz;
+import com.sun.management.UnixOperatingSystemMXBean;
+import com.tt.base.TestJars;
+import com.tt.base.jsp.SharedJspCompiler;
+import com.tt.nested.NestedContentCache;
+import com.tt.nested.NestedJarFilePool;
+import com.tt.nested.NestedJarIndexRegistry;
+import com.tt.nested.NestedReleaseRegistry;
+import org.apache.catalina.Context;
+import org.apache.catalina.WebResource;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.webresources.JarWarResourceSet;
+import org.apache.catalina.webresources.StandardRoot;
+import org.apache.jasper.servlet.JasperInitializer;
+import org.apache.jasper.servlet.JspServlet;
+import org.apache.tomcat.util.scan.StandardJarScanner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 反复部署、卸载同一路径的模块 jar，经 {@link NestedResourceReleaseHandler} 释放后，
+ * 共享句柄池、内容缓存、资源集索引与 jsp 编译器的 jar 摘要表均不再持有该模块，打开的文件句柄数不随部署次数增长
+ */
+class NestedResourceReleaseHandlerTests {
+
+    private static final String SUPPORT_JAR = "lib/support.jar";
+
+    private static final String BIZ_JAR = "WEB-INF/lib/module-ark-biz.jar";
+
+    private static final byte[] APP_JS = "console.log('app');".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] TLD = ("<taglib xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"2.1\">"
+            + "<tlib-version>1.0</tlib-version><short-name>test</short-name><uri>http://tt/test</uri>"
+            + "</taglib>").getBytes(StandardCharsets.UTF_8);
+
+    private static final String INDEX_JSP = "<%@ taglib uri=\"http://tt/test\" prefix=\"t\" %>index";
+
+    private static final int REDEPLOYS = 10;
+
+    // 除 Tomcat 自身外不应随部署次数增长
+    private static final long FD_TOLERANCE = 5;
+
+    @TempDir
+    Path temp;
+
+    private Path webapp;
+
+    private Path jspCache;
+
+    private Tomcat tomcat;
+
+    @BeforeEach
+    void startTomcat() throws Exception {
+        webapp = Files.createDirectories(temp.resolve("webapp"));
+        Files.createDirectories(webapp.resolve(BIZ_JAR).getParent());
+        Files.write(webapp.resolve("index.jsp"), INDEX_JSP.getBytes(StandardCharsets.UTF_8));
+        jspCache = temp.resolve("jsp-cache");
+        System.setProperty(SharedJspCompiler.CACHE_DIR_PROPERTY, jspCache.toString());
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(temp.resolve("tomcat").toString());
+        tomcat.setPort(0);
+        tomcat.getConnector();
+        tomcat.getHost();
+        tomcat.start();
+    }
+
+    @AfterEach
+    void stopTomcat() throws Exception {
+        System.clearProperty(SharedJspCompiler.CACHE_DIR_PROPERTY);
+        tomcat.stop();
+        tomcat.destroy();
+    }
+
+    @Test
+    void redeployReleasesHandlesIndexesCacheEntriesAndJarDigests() throws Exception {
+        assumeTrue(NestedContentCache.getInstance().isEnabled(), "nested content cache is disabled");
+        redeploy(0);
+        long openFiles = getOpenFileDescriptorCount();
+        for (int i = 1; i <= REDEPLOYS; i++) {
+            redeploy(i);
+        }
+        assertThat(getOpenFileDescriptorCount()).isLessThanOrEqualTo(openFiles + FD_TOLERANCE);
+    }
+
+    private void redeploy(int version) throws Exception {
+        byte[] support = TestJars.storedJar("META-INF/resources/app.js", APP_JS);
+        // 每次部署的模块 jar 内容不同，jsp 编译缓存须按新的 jar 摘要重新编译
+        Path bizJar = TestJars.writeStoredJar(webapp.resolve(BIZ_JAR), SUPPORT_JAR, support,
+                "META-INF/test.tld", TLD,
+                "version.txt", Integer.toString(version).getBytes(StandardCharsets.UTF_8));
+        String bizKey = NestedJarFilePool.getKey(bizJar.toString(), "");
+
+        JarWarResourceSet resourceSet = new JarWarResourceSet(new StandardRoot(), "/", bizJar.toString(),
+                SUPPORT_JAR, "/META-INF/resources");
+        resourceSet.start();
+        Context context = addContext(version);
+        try {
+            WebResource resource = resourceSet.getResource("/app.js");
+            assertThat(resource.getContent()).isEqualTo(APP_JS);
+            assertThat(get(version)).isEqualTo("index");
+
+            assertThat(NestedContentCache.getInstance().getSize(bizKey)).isEqualTo(APP_JS.length);
+            assertThat(NestedJarIndexRegistry.getInstance().getReferences(SUPPORT_JAR, support.length,
+                    TestJars.crc(support))).isEqualTo(1);
+            assertThat(NestedJarFilePool.getInstance().size()).isPositive();
+            assertThat(countCompiledJsps()).isEqualTo(version + 1);
+            assertThat(countJarDigests(bizJar)).isPositive();
+
+            tomcat.getHost().removeChild(context);
+            Biz biz = mock(Biz.class);
+            when(biz.getBizUrl()).thenReturn(bizJar.toUri().toURL());
+            when(biz.getIdentity()).thenReturn("module:" + version);
+            new NestedResourceReleaseHandler().handleEvent(new AfterBizStopEvent(biz));
+
+            assertThat(NestedContentCache.getInstance().getSize(bizKey)).isZero();
+            assertThat(NestedJarIndexRegistry.getInstance().getReferences(SUPPORT_JAR, support.length,
+                    TestJars.crc(support))).isZero();
+            assertThat(NestedJarFilePool.getInstance().size()).isZero();
+            assertThat(countJarDigests(bizJar)).isZero();
+            assertThat(NestedReleaseRegistry.releaseBiz(bizKey)).isZero();
+        } finally {
+            resourceSet.stop();
+            resourceSet.destroy();
+        }
+    }
+
+    private Context addContext(int version) {
+        // 主机已启动，上下文须配置完成后再加入
+        Context context = new StandardContext();
+        context.setName("/biz-" + version);
+        context.setPath("/biz-" + version);
+        context.setDocBase(webapp.toString());
+        context.addLifecycleListener(new Tomcat.FixContextListener());
+        // 只扫描 WEB-INF/lib 下的模块 jar
+        StandardJarScanner jarScanner = new StandardJarScanner();
+        jarScanner.setScanClassPath(false);
+        context.setJarScanner(jarScanner);
+        context.addServletContainerInitializer(new JasperInitializer(), null);
+        Wrapper jsp = context.createWrapper();
+        jsp.setName("jsp");
+        jsp.setServletClass(JspServlet.class.getName());
+        jsp.addInitParameter("compilerClassName", SharedJspCompiler.class.getName());
+        jsp.addInitParameter("development", "false");
+        context.addChild(jsp);
+        context.addServletMappingDecoded("*.jsp", "jsp");
+        tomcat.getHost().addChild(context);
+        return context;
+    }
+
+    private String get(int version) throws IOException {
+        URL url = new URL("http://localhost:" + tomcat.getConnector().getLocalPort() + "/biz-" + version
+                + "/index.jsp");
+        try (InputStream is = url.openStream()) {
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8).trim();
+        }
+    }
+
+    private long countCompiledJsps() throws IOException {
+        if (!Files.isDirectory(jspCache)) {
+            return 0;
+        }
+        try (Stream<Path> entries = Files.walk(jspCache, 2)) {
+            return entries.filter(entry -> jspCache.relativize(entry).getNameCount() == 2)
+                    .filter(Files::isDirectory)
+                    .count();
+        }
+    }
+
+    /*
+     * 模块 jar 本身也是 jsp 的依赖，重新部署后缓存键总会变化，摘要是否释放只能从摘要表观察
+     */
+    private static long countJarDigests(Path bizJar) throws ReflectiveOperationException {
+        Field field = SharedJspCompiler.class.getDeclaredField("jarDigests");
+        field.setAccessible(true);
+        String location = bizJar.toUri().getPath();
+        return ((Map<?, ?>) field.get(null)).keySet().stream()
+                .filter(jarUrl -> jarUrl.toString().contains(location))
+                .count();
+    }
+
+    private static long getOpenFileDescriptorCount() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        assumeTrue(os instanceof UnixOperatingSystemMXBean, "open file descriptors are not reported");
+        return ((UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount();
+    }
+}
@@ -0,0 +1,97 @@
+package org.springframework.boot.web.servlet.server;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.tt.base.TestJars;
+import com.tt.nested.NestedJarFilePool;
+import com.tt.nested.NestedMetrics;
+import com.tt.nested.NestedReleaseRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link StaticResourceJars}.
+ */
+class StaticResourceJarsTests {
+
+	@TempDir
+	Path temp;
+
+	private final AtomicInteger probes = new AtomicInteger();
+
+	private NestedMetrics.Recorder previousRecorder;
+
+	@BeforeEach
+	void installRecorder() {
+		this.previousRecorder = NestedMetrics.getRecorder();
+		NestedMetrics.setRecorder(new NestedMetrics.Recorder() {
+
+			@Override
+			public void entryTableBuilt(String key, String archivePath, long nanos, int entries) {
+			}
+
+			@Override
+			public void entryRead(String key, String archivePath, long nanos, long bytes) {
+			}
+
+			@Override
+			public void entriesSkipped(String key, String archivePath, int skipped) {
+			}
+
+			@Override
+			public void resourceJarProbed(String key, String archivePath, long nanos) {
+				StaticResourceJarsTests.this.probes.incrementAndGet();
+			}
+
+		});
+	}
+
+	@AfterEach
+	void restoreRecorder() {
+		NestedMetrics.setRecorder(this.previousRecorder);
+	}
+
+	@Test
+	void includeNestedJarWithResourcesEntry() throws Exception {
+		URL support = nestedUrl(writeBizJar("META-INF/resources/", "META-INF/resources/app.js"));
+		assertThat(new StaticResourceJars().getUrlsFrom(support)).containsExactly(support);
+	}
+
+	@Test
+	void excludeNestedJarWithOnlyNestedResourcesEntry() throws Exception {
+		URL support = nestedUrl(writeBizJar("BOOT-INF/classes/META-INF/resources/",
+				"BOOT-INF/classes/META-INF/resources/app.js"));
+		assertThat(new StaticResourceJars().getUrlsFrom(support)).isEmpty();
+	}
+
+	@Test
+	void probeResultIsCachedUntilBizIsReleased() throws Exception {
+		Path bizJar = writeBizJar("META-INF/resources/", "META-INF/resources/app.js");
+		URL support = nestedUrl(bizJar);
+		StaticResourceJars staticResourceJars = new StaticResourceJars();
+		assertThat(staticResourceJars.getUrlsFrom(support)).containsExactly(support);
+		assertThat(staticResourceJars.getUrlsFrom(support)).containsExactly(support);
+		assertThat(this.probes).hasValue(1);
+		assertThat(NestedReleaseRegistry.releaseBiz(NestedJarFilePool.getKey(bizJar.toString(), ""))).isPositive();
+		assertThat(staticResourceJars.getUrlsFrom(support)).containsExactly(support);
+		assertThat(this.probes).hasValue(2);
+	}
+
+	private Path writeBizJar(String directory, String resource) throws Exception {
+		byte[] support = TestJars.storedJar(directory, new byte[0], resource,
+				"console.log('app');".getBytes(StandardCharsets.UTF_8));
+		return TestJars.writeStoredJar(this.temp.resolve("module-ark-biz.jar"), "lib/support.jar", support);
+	}
+
+	private URL nestedUrl(Path bizJar) throws Exception {
+		return new URL("jar:" + bizJar.toUri() + "!/lib/support.jar!/");
+	}
+
+}
@@ -0,0 +1,202 @@
+package com.tt.benchmarks;
+
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.webresources.JarWarResourceSet;
+import org.apache.catalina.webresources.StandardRoot;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * Generated base JAR holding a resource JAR at 1, 2 or 3 levels of nesting,
+ * laid out like a biz deployed in the base:
+ * <ul>
+ * <li>1: {@code base.jar!/lib/resources.jar}</li>
+ * <li>2: {@code base.jar!/BOOT-INF/classes/SOFA-ARK/biz/module-ark-biz.jar!/lib/resources.jar}</li>
+ * <li>3: {@code base.jar!/BOOT-INF/lib/host.jar!/BOOT-INF/classes/SOFA-ARK/biz/module-ark-biz.jar!/lib/resources.jar}</li>
+ * </ul>
+ * The resource JAR holds {@link #entries} entries below
+ * {@code META-INF/resources/}, one of which is {@link #TARGET}. The
+ * {@link #middleLayer} parameter sets how the resource JAR is stored in the
+ * archive that contains it. The archives enclosing that one are always
+ * STORED, as the Spring Boot launcher requires to open nested archives.
+ */
+@State(Scope.Benchmark)
+public class NestedJarFixture {
+
+    public static final String TARGET = "META-INF/resources/target.jsp";
+
+    public static final String TARGET_PATH = "/target.jsp";
+
+    private static final String RESOURCES_JAR = "lib/resources.jar";
+
+    private static final String MODULE_JAR = "BOOT-INF/classes/SOFA-ARK/biz/module-ark-biz.jar";
+
+    private static final String HOST_JAR = "BOOT-INF/lib/host.jar";
+
+    private static final String SEPARATOR = "!/";
+
+    public enum Position {
+        FRONT, MIDDLE, END
+    }
+
+    public enum Compression {
+        STORED(ZipEntry.STORED), DEFLATED(ZipEntry.DEFLATED);
+
+        private final int method;
+
+        Compression(int method) {
+            this.method = method;
+        }
+    }
+
+    @Param({"1", "2", "3"})
+    public int levels;
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int entries;
+
+    @Param({"FRONT", "MIDDLE", "END"})
+    public Position position;
+
+    @Param({"STORED", "DEFLATED"})
+    public Compression middleLayer;
+
+    private Path directory;
+    private Path base;
+    private String archivePath;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // 嵌套 jar: URL 由 Spring Boot 启动器的 URL 处理器打开，与基座运行时一致
+        org.springframework.boot.loader.jar.JarFile.registerUrlProtocolHandler();
+
+        byte[] jar = createJar(RESOURCES_JAR, createResourcesJar(), middleLayer.method);
+        archivePath = RESOURCES_JAR;
+        if (levels >= 2) {
+            jar = createJar(MODULE_JAR, jar, ZipEntry.STORED);
+            archivePath = MODULE_JAR + SEPARATOR + archivePath;
+        }
+        if (levels >= 3) {
+            jar = createJar(HOST_JAR, jar, ZipEntry.STORED);
+            archivePath = HOST_JAR + SEPARATOR + archivePath;
+        }
+
+        directory = Files.createTempDirectory("nested-jar-benchmark");
+        base = directory.resolve("base.jar");
+        Files.write(base, jar);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * @return the absolute path of the base JAR
+     */
+    public String getBase() {
+        return base.toString();
+    }
+
+    /**
+     * @return the path of the resource JAR within the base JAR, with one
+     *         {@code "!/"} separator per additional level
+     */
+    public String getArchivePath() {
+        return archivePath;
+    }
+
+    /**
+     * @return the {@code jar:} URL of the resource JAR
+     */
+    public URL getResourcesJarUrl() throws MalformedURLException {
+        return new URL("jar:" + base.toFile().toURI() + SEPARATOR + archivePath);
+    }
+
+    /**
+     * @return the URLs a biz class loader would report for the fixture: the
+     *         base JAR and the resource JAR
+     */
+    public URL[] getClassPathUrls() throws MalformedURLException {
+        return new URL[] { base.toFile().toURI().toURL(), new URL(getResourcesJarUrl() + SEPARATOR) };
+    }
+
+    /**
+     * Creates a started resource set for the resource JAR mounted at the
+     * root of a web application, the way Tomcat mounts a resource JAR of a
+     * biz.
+     */
+    public JarWarResourceSet createResourceSet() throws LifecycleException {
+        JarWarResourceSet resourceSet = new JarWarResourceSet(new StandardRoot(), "/", getBase(),
+                archivePath, "/META-INF/resources");
+        resourceSet.start();
+        return resourceSet;
+    }
+
+    private byte[] createResourcesJar() throws IOException {
+        int target;
+        switch (position) {
+            case FRONT:
+                target = 0;
+                break;
+            case MIDDLE:
+                target = entries / 2;
+                break;
+            default:
+                target = entries - 1;
+        }
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JarOutputStream jos = new JarOutputStream(bytes, manifest)) {
+            for (int i = 0; i < entries; i++) {
+                String name = i == target ? TARGET : String.format("META-INF/resources/static/%05d.html", i);
+                jos.putNextEntry(new JarEntry(name));
+                jos.write(("<p>" + name + "</p>\n").repeat(8).getBytes(StandardCharsets.UTF_8));
+                jos.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] createJar(String name, byte[] content, int method) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JarOutputStream jos = new JarOutputStream(bytes)) {
+            JarEntry entry = new JarEntry(name);
+            entry.setMethod(method);
+            if (method == ZipEntry.STORED) {
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                entry.setCrc(crc.getValue());
+                entry.setSize(content.length);
+                entry.setCompressedSize(content.length);
+            }
+            jos.putNextEntry(entry);
+            jos.write(content);
+            jos.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,58 @@
+package org.apache.catalina.webresources;
+
+import com.tt.benchmarks.NestedJarFixture;
+import org.apache.catalina.LifecycleException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading a single resource from a nested resource JAR whose
+ * resource set is already started, as when serving a request.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JarWarResourceBenchmark {
+
+    @Benchmark
+    public long getJarInputStreamWrapper(WarmResourceSet state) throws IOException {
+        try (InputStream is = state.resource.getJarInputStreamWrapper()) {
+            return is.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+
+    @State(Scope.Benchmark)
+    public static class WarmResourceSet {
+
+        JarWarResourceSet resourceSet;
+        JarWarResource resource;
+
+        @Setup
+        public void setUp(NestedJarFixture fixture) throws LifecycleException {
+            resourceSet = fixture.createResourceSet();
+            resource = (JarWarResource) resourceSet.getResource(NestedJarFixture.TARGET_PATH);
+        }
+
+        @TearDown
+        public void tearDown() throws LifecycleException {
+            resourceSet.destroy();
+        }
+    }
+}
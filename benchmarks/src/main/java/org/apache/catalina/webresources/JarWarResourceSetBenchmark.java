@@ -0,0 +1,102 @@
+package org.apache.catalina.webresources;
+
+import com.tt.benchmarks.NestedJarFixture;
+import org.apache.catalina.LifecycleException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+
+/**
+ * Cost of building the entry map of a nested resource JAR, which Tomcat does
+ * once per resource set on the first lookup, of starting a resource set and
+ * building its entry map, which reads the nested JAR once, and of listing a
+ * directory of it once built.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JarWarResourceSetBenchmark {
+
+    @Benchmark
+    public Map<String,JarEntry> getArchiveEntries(ColdResourceSet state) {
+        return state.resourceSet.getArchiveEntries(false);
+    }
+
+
+    @Benchmark
+    public Map<String,JarEntry> startAndGetArchiveEntries(NestedJarFixture fixture) throws LifecycleException {
+        JarWarResourceSet resourceSet = fixture.createResourceSet();
+        try {
+            return resourceSet.getArchiveEntries(false);
+        } finally {
+            resourceSet.releaseIndex();
+            resourceSet.destroy();
+        }
+    }
+
+
+    @Benchmark
+    public Set<String> listWebAppPaths(WarmResourceSet state) {
+        return state.resourceSet.listWebAppPaths("/");
+    }
+
+
+    /**
+     * A new resource set for every invocation, so that its entries are not
+     * built yet.
+     */
+    @State(Scope.Thread)
+    public static class ColdResourceSet {
+
+        JarWarResourceSet resourceSet;
+
+        @Setup(Level.Invocation)
+        public void setUp(NestedJarFixture fixture) throws LifecycleException {
+            resourceSet = fixture.createResourceSet();
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws LifecycleException {
+            // 释放共享索引，下一次调用重新构建
+            resourceSet.releaseIndex();
+            resourceSet.destroy();
+        }
+    }
+
+
+    /**
+     * A resource set whose entries are built, shared by every invocation.
+     */
+    @State(Scope.Thread)
+    public static class WarmResourceSet {
+
+        JarWarResourceSet resourceSet;
+
+        @Setup(Level.Trial)
+        public void setUp(NestedJarFixture fixture) throws LifecycleException {
+            resourceSet = fixture.createResourceSet();
+            resourceSet.getArchiveEntries(false);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws LifecycleException {
+            resourceSet.destroy();
+        }
+    }
+}
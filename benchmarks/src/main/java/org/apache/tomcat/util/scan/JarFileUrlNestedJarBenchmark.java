@@ -0,0 +1,43 @@
+package org.apache.tomcat.util.scan;
+
+import com.tt.benchmarks.NestedJarFixture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+
+/**
+ * Cost of opening a nested resource JAR the way Tomcat's JAR scanner does
+ * and streaming to a single entry.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JarFileUrlNestedJarBenchmark {
+
+    @Benchmark
+    public long createJarInputStream(NestedJarFixture fixture) throws IOException {
+        try (JarFileUrlNestedJar jar = new JarFileUrlNestedJar(fixture.getResourcesJarUrl())) {
+            NonClosingJarInputStream jarIs = jar.createJarInputStream();
+            try {
+                JarEntry entry = jarIs.getNextJarEntry();
+                while (entry != null && !entry.getName().equals(NestedJarFixture.TARGET)) {
+                    entry = jarIs.getNextJarEntry();
+                }
+                return jarIs.transferTo(OutputStream.nullOutputStream());
+            } finally {
+                jarIs.reallyClose();
+            }
+        }
+    }
+}
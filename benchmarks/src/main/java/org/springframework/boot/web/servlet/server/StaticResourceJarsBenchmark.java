@@ -0,0 +1,34 @@
+package org.springframework.boot.web.servlet.server;
+
+import com.tt.benchmarks.NestedJarFixture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of detecting static resource jars among the URLs of a biz class
+ * loader. Probe results are cached per JAR, so after the first invocation
+ * this measures the cached path that every further biz deployment takes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StaticResourceJarsBenchmark {
+
+	@Benchmark
+	public List<URL> getUrlsFrom(NestedJarFixture fixture) throws MalformedURLException {
+		return new StaticResourceJars().getUrlsFrom(fixture.getClassPathUrls());
+	}
+
+}
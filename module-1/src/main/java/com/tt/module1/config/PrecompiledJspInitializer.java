@@ -0,0 +1,109 @@
+package com.tt.module1.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.web.servlet.ServletContextInitializer;
+import org.springframework.stereotype.Component;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRegistration;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Registers the servlets precompiled from the module's JSPs at build time
+ * (see the {@code precompile-jsp} execution in the module's pom) under the
+ * path of their JSP, so that Jasper does not compile them on the first
+ * request. JSPs without a precompiled class are still compiled by Jasper.
+ */
+@Component
+public class PrecompiledJspInitializer implements ServletContextInitializer {
+
+    /**
+     * Servlet and servlet-mapping elements written by JspC with
+     * {@code -webinc}.
+     */
+    static final String MAPPINGS = "META-INF/jspc/web-inc.xml";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrecompiledJspInitializer.class);
+
+    @Override
+    public void onStartup(ServletContext servletContext) {
+        ClassLoader classLoader = getClass().getClassLoader();
+        Map<String, String> servletClasses = new LinkedHashMap<>();
+        Map<String, String> urlPatterns = new LinkedHashMap<>();
+        try (InputStream is = classLoader.getResourceAsStream(MAPPINGS)) {
+            if (is == null) {
+                // 构建时未预编译，全部由 Jasper 在运行时编译
+                return;
+            }
+            Document document = parse(is);
+            NodeList servlets = document.getElementsByTagName("servlet");
+            for (int i = 0; i < servlets.getLength(); i++) {
+                Element servlet = (Element) servlets.item(i);
+                servletClasses.put(getText(servlet, "servlet-name"), getText(servlet, "servlet-class"));
+            }
+            NodeList mappings = document.getElementsByTagName("servlet-mapping");
+            for (int i = 0; i < mappings.getLength(); i++) {
+                Element mapping = (Element) mappings.item(i);
+                urlPatterns.put(getText(mapping, "servlet-name"), getText(mapping, "url-pattern"));
+            }
+        } catch (IOException | ParserConfigurationException | SAXException e) {
+            LOGGER.warn("Unable to read precompiled JSP mappings, JSPs will be compiled at runtime", e);
+            return;
+        }
+
+        int registered = 0;
+        for (Map.Entry<String, String> entry : servletClasses.entrySet()) {
+            String urlPattern = urlPatterns.get(entry.getKey());
+            if (urlPattern == null) {
+                continue;
+            }
+            Class<? extends Servlet> servletClass;
+            try {
+                servletClass = Class.forName(entry.getValue(), false, classLoader).asSubclass(Servlet.class);
+            } catch (ClassNotFoundException | LinkageError | ClassCastException e) {
+                // 缺少预编译类时不注册，由 JspServlet 在运行时编译该 jsp
+                LOGGER.warn("Precompiled class {} of {} is not available, it will be compiled at runtime",
+                        entry.getValue(), urlPattern);
+                continue;
+            }
+            ServletRegistration.Dynamic registration = servletContext.addServlet(entry.getKey(), servletClass);
+            if (registration != null) {
+                registration.addMapping(urlPattern);
+                registered++;
+            }
+        }
+        LOGGER.info("Registered {} precompiled JSPs", registered);
+    }
+
+    private static Document parse(InputStream is)
+            throws ParserConfigurationException, IOException, SAXException {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        // JspC 生成的是 web.xml 片段，没有根元素
+        InputStream document = new SequenceInputStream(new SequenceInputStream(
+                new ByteArrayInputStream("<web-inc>".getBytes(StandardCharsets.UTF_8)), is),
+                new ByteArrayInputStream("</web-inc>".getBytes(StandardCharsets.UTF_8)));
+        return factory.newDocumentBuilder().parse(document);
+    }
+
+    private static String getText(Element element, String tagName) {
+        NodeList nodes = element.getElementsByTagName(tagName);
+        return nodes.getLength() == 0 ? null : nodes.item(0).getTextContent().trim();
+    }
+}
@@ -0,0 +1,48 @@
+package com.tt.nested;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Random access view over the bytes of an archive, whether it is a plain file
+ * or a JAR nested inside another archive.
+ */
+public interface ArchiveSource {
+
+    /**
+     * @return the number of bytes in the archive
+     */
+    long length();
+
+    /**
+     * Opens a stream over {@code length} bytes starting at {@code position}.
+     *
+     * @param position  offset of the first byte, relative to the archive start
+     * @param length    number of bytes the stream will return
+     *
+     * @return a stream the caller must close
+     *
+     * @throws IOException if the underlying archive cannot be read
+     */
+    InputStream openStream(long position, long length) throws IOException;
+
+    /**
+     * Reads exactly {@code len} bytes starting at {@code position}.
+     *
+     * @throws IOException if the underlying archive cannot be read or ends
+     *         before {@code len} bytes were read
+     */
+    default void readFully(long position, byte[] b, int off, int len) throws IOException {
+        try (InputStream is = openStream(position, len)) {
+            int read = 0;
+            while (read < len) {
+                int n = is.read(b, off + read, len - read);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                read += n;
+            }
+        }
+    }
+}
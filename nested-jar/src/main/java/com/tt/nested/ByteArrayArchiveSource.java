@@ -0,0 +1,43 @@
+package com.tt.nested;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link ArchiveSource} over an archive held in memory.
+ */
+public final class ByteArrayArchiveSource implements ArchiveSource {
+
+    private final byte[] bytes;
+
+    public ByteArrayArchiveSource(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+
+    @Override
+    public long length() {
+        return bytes.length;
+    }
+
+
+    @Override
+    public InputStream openStream(long position, long length) throws IOException {
+        if (position < 0 || length < 0 || position + length > bytes.length) {
+            throw new IOException("Range [" + position + ", " + (position + length) +
+                    ") is outside the archive");
+        }
+        return new ByteArrayInputStream(bytes, (int) position, (int) length);
+    }
+
+
+    @Override
+    public void readFully(long position, byte[] b, int off, int len) throws IOException {
+        if (position < 0 || len < 0 || position + len > bytes.length) {
+            throw new IOException("Range [" + position + ", " + (position + len) +
+                    ") is outside the archive");
+        }
+        System.arraycopy(bytes, (int) position, b, off, len);
+    }
+}
@@ -0,0 +1,693 @@
+package com.tt.nested;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.jar.JarEntry;
+
+/**
+ * Immutable, compact map of entry name to {@link JarEntry}. Names are kept
+ * sorted in a single UTF-8 byte arena and the entry attributes in parallel
+ * primitive arrays, which costs a few dozen bytes per entry plus the name
+ * rather than a full {@link JarEntry} and hash map node. Lookups are binary
+ * searches and {@link JarEntry} instances are created on demand.
+ * <p>
+ * As the names are sorted, the entries below a directory are a contiguous
+ * range of slots, so the children of a directory are listed with a binary
+ * search per child rather than a scan of every entry.
+ * <p>
+ * A Bloom filter over the names, built with the table, rejects most lookups
+ * of names that are not in the table without searching it. Resource lookups
+ * of a web application probe every resource set in turn, so most lookups of
+ * a given set miss.
+ */
+public final class CompactEntryTable extends AbstractMap<String,JarEntry> {
+
+    /**
+     * Value of the attributes of an entry that are not known, e.g. the local
+     * header offset of an entry read with a {@link java.util.jar.JarInputStream}.
+     */
+    public static final long UNKNOWN = -1;
+
+    private static final long OBJECT_SIZE = 24;
+    private static final long ARRAY_HEADER_SIZE = 16;
+
+    // About 1% false positives
+    private static final int FILTER_BITS_PER_ENTRY = 10;
+    private static final int FILTER_HASHES = 7;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int size;
+    private final byte[] names;
+    private final int[] nameOffsets;
+    private final short[] methods;
+    private final long[] crcs;
+    private final long[] compressedSizes;
+    private final long[] sizes;
+    private final long[] localHeaderOffsets;
+    private final long[] dosTimes;
+    // Only set if an entry is stored under another name, e.g. a versioned
+    // entry of a multi-release JAR
+    private final String[] entryNames;
+    private final long[] filter;
+
+    private Set<Map.Entry<String,JarEntry>> entrySet;
+    private Set<String> keySet;
+
+    private CompactEntryTable(int size, byte[] names, int[] nameOffsets, short[] methods,
+            long[] crcs, long[] compressedSizes, long[] sizes, long[] localHeaderOffsets,
+            long[] dosTimes, String[] entryNames) {
+        this.size = size;
+        this.names = names;
+        this.nameOffsets = nameOffsets;
+        this.methods = methods;
+        this.crcs = crcs;
+        this.compressedSizes = compressedSizes;
+        this.sizes = sizes;
+        this.localHeaderOffsets = localHeaderOffsets;
+        this.dosTimes = dosTimes;
+        this.entryNames = entryNames;
+        this.filter = buildFilter(size, names, nameOffsets);
+    }
+
+
+    public static Builder builder(int expectedSize) {
+        return new Builder(expectedSize);
+    }
+
+
+    /**
+     * Creates a table holding the same mappings as the given map. The local
+     * header offset of every entry is {@link #UNKNOWN}.
+     */
+    public static CompactEntryTable copyOf(Map<String,JarEntry> map) {
+        if (map instanceof CompactEntryTable) {
+            return (CompactEntryTable) map;
+        }
+        Builder builder = builder(map.size());
+        for (Map.Entry<String,JarEntry> mapEntry : map.entrySet()) {
+            JarEntry entry = mapEntry.getValue();
+            String entryName = entry.getName().equals(mapEntry.getKey()) ? null : entry.getName();
+            builder.add(mapEntry.getKey(), entryName, entry.getMethod(), entry.getCrc(),
+                    entry.getCompressedSize(), entry.getSize(), UNKNOWN, toDosTime(entry));
+        }
+        return builder.build();
+    }
+
+
+    /**
+     * @return an estimate of the heap retained by this table, in bytes
+     */
+    public long estimateHeapSize() {
+        long heapSize = OBJECT_SIZE + array(names.length) + array(4L * nameOffsets.length) +
+                array(2L * methods.length) + array(8L * crcs.length) + array(8L * compressedSizes.length) +
+                array(8L * sizes.length) + array(8L * localHeaderOffsets.length) + array(8L * dosTimes.length) +
+                array(8L * filter.length);
+        if (entryNames != null) {
+            heapSize += array(4L * entryNames.length);
+            for (String entryName : entryNames) {
+                if (entryName != null) {
+                    heapSize += OBJECT_SIZE + array(entryName.length());
+                }
+            }
+        }
+        return heapSize;
+    }
+
+
+    private static long array(long bytes) {
+        // Array header plus content, aligned to 8 bytes
+        return (ARRAY_HEADER_SIZE + bytes + 7) & ~7L;
+    }
+
+
+    /**
+     * @return {@code false} if there is certainly no entry with the given
+     *         name, {@code true} if there may be one
+     */
+    public boolean mightContain(String name) {
+        return mightContain(hash(name));
+    }
+
+
+    /**
+     * @return the slot of the given name or a negative value if there is no
+     *         such entry
+     */
+    public int indexOf(String name) {
+        return mightContain(name) ? search(name) : -1;
+    }
+
+
+    private int search(String name) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(mid, name);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+
+    /**
+     * Lists the children of a directory: the names of the entries directly
+     * below it and of the directories below it, relative to the directory.
+     * The names of directories end with {@code '/'}. Costs a binary search
+     * per child, however many entries the sub-directories hold.
+     *
+     * @param directory                     The directory, ending with
+     *                                          {@code '/'}, or the empty
+     *                                          string for the root
+     * @param includeImplicitDirectories    {@code true} to also list the
+     *                                          directories that have no entry
+     *                                          of their own but only entries
+     *                                          below them
+     *
+     * @return the children in name order, empty if there are none
+     */
+    public List<String> listChildren(String directory, boolean includeImplicitDirectories) {
+        byte[] prefix = directory.getBytes(StandardCharsets.UTF_8);
+        List<String> children = new ArrayList<>();
+        int slot = lowerBound(prefix, 0, prefix.length);
+        int end = upperBound(prefix, 0, prefix.length, slot);
+        while (slot < end) {
+            int offset = nameOffsets[slot];
+            int childOffset = offset + prefix.length;
+            int nameEnd = nameOffsets[slot + 1];
+            int slash = childOffset;
+            while (slash < nameEnd && names[slash] != '/') {
+                slash++;
+            }
+            if (childOffset == nameEnd) {
+                // 目录自身的条目
+                slot++;
+            } else if (slash == nameEnd) {
+                children.add(new String(names, childOffset, nameEnd - childOffset, StandardCharsets.UTF_8));
+                slot++;
+            } else {
+                // 子目录的条目若存在，排在其下所有条目之前
+                if (includeImplicitDirectories || slash == nameEnd - 1) {
+                    children.add(new String(names, childOffset, slash + 1 - childOffset, StandardCharsets.UTF_8));
+                }
+                slot = upperBound(names, offset, slash + 1 - offset, slot + 1);
+            }
+        }
+        return children;
+    }
+
+
+    /*
+     * 第一个名称不小于该前缀的 slot
+     */
+    private int lowerBound(byte[] prefix, int from, int length) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int offset = nameOffsets[mid];
+            if (Arrays.compareUnsigned(names, offset, nameOffsets[mid + 1], prefix, from, from + length) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+
+    /*
+     * 从 low 起第一个名称不以该前缀开头的 slot，low 处的名称不小于该前缀
+     */
+    private int upperBound(byte[] prefix, int from, int length, int low) {
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefix(mid, prefix, from, length) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+
+    /*
+     * Compares the name in the given slot, truncated to the length of the
+     * prefix, with the prefix: 0 if the name starts with the prefix.
+     */
+    private int comparePrefix(int slot, byte[] prefix, int from, int length) {
+        int offset = nameOffsets[slot];
+        int nameLength = Math.min(nameOffsets[slot + 1] - offset, length);
+        return Arrays.compareUnsigned(names, offset, offset + nameLength, prefix, from, from + length);
+    }
+
+
+    /**
+     * @return the name this slot is looked up by
+     */
+    public String getKey(int slot) {
+        return new String(names, nameOffsets[slot], nameOffsets[slot + 1] - nameOffsets[slot],
+                StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * @return the name of the archive entry holding the data of this slot
+     */
+    public String getEntryName(int slot) {
+        if (entryNames != null && entryNames[slot] != null) {
+            return entryNames[slot];
+        }
+        return getKey(slot);
+    }
+
+
+    public int getMethod(int slot) {
+        return methods[slot];
+    }
+
+
+    public long getCrc(int slot) {
+        return crcs[slot];
+    }
+
+
+    public long getCompressedSize(int slot) {
+        return compressedSizes[slot];
+    }
+
+
+    public long getSize(int slot) {
+        return sizes[slot];
+    }
+
+
+    public long getLocalHeaderOffset(int slot) {
+        return localHeaderOffsets[slot];
+    }
+
+
+    public long getDosTime(int slot) {
+        return dosTimes[slot];
+    }
+
+
+    /**
+     * @return a new {@link JarEntry} for the given slot
+     */
+    public JarEntry createJarEntry(int slot) {
+        JarEntry jarEntry = new JarEntry(getEntryName(slot));
+        if (methods[slot] >= 0) {
+            jarEntry.setMethod(methods[slot]);
+        }
+        if (crcs[slot] >= 0) {
+            jarEntry.setCrc(crcs[slot]);
+        }
+        if (compressedSizes[slot] >= 0) {
+            jarEntry.setCompressedSize(compressedSizes[slot]);
+        }
+        if (sizes[slot] >= 0) {
+            jarEntry.setSize(sizes[slot]);
+        }
+        if (dosTimes[slot] != UNKNOWN) {
+            LocalDateTime time = toLocalDateTime(dosTimes[slot]);
+            if (time != null) {
+                jarEntry.setTimeLocal(time);
+            }
+        }
+        return jarEntry;
+    }
+
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && indexOf((String) key) >= 0;
+    }
+
+
+    @Override
+    public JarEntry get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int slot = indexOf((String) key);
+        return slot < 0 ? null : createJarEntry(slot);
+    }
+
+
+    @Override
+    public Set<String> keySet() {
+        Set<String> keySet = this.keySet;
+        if (keySet == null) {
+            keySet = new AbstractSet<String>() {
+                @Override
+                public Iterator<String> iterator() {
+                    return new SlotIterator<String>() {
+                        @Override
+                        String get(int slot) {
+                            return getKey(slot);
+                        }
+                    };
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return containsKey(o);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+            this.keySet = keySet;
+        }
+        return keySet;
+    }
+
+
+    @Override
+    public Set<Map.Entry<String,JarEntry>> entrySet() {
+        Set<Map.Entry<String,JarEntry>> entrySet = this.entrySet;
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String,JarEntry>>() {
+                @Override
+                public Iterator<Map.Entry<String,JarEntry>> iterator() {
+                    return new SlotIterator<Map.Entry<String,JarEntry>>() {
+                        @Override
+                        Map.Entry<String,JarEntry> get(int slot) {
+                            return new SimpleImmutableEntry<>(getKey(slot), createJarEntry(slot));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+            this.entrySet = entrySet;
+        }
+        return entrySet;
+    }
+
+
+    /*
+     * Compares the name in the given slot with the key in unsigned UTF-8 byte
+     * order, the order the arena is sorted in. ASCII names, the usual case,
+     * are compared without encoding the key.
+     */
+    private int compare(int slot, String key) {
+        int offset = nameOffsets[slot];
+        int length = nameOffsets[slot + 1] - offset;
+        int keyLength = key.length();
+        int n = Math.min(length, keyLength);
+        for (int i = 0; i < n; i++) {
+            int b = names[offset + i] & 0xFF;
+            char c = key.charAt(i);
+            if (b >= 0x80 || c >= 0x80) {
+                byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                return Arrays.compareUnsigned(names, offset, offset + length, keyBytes, 0,
+                        keyBytes.length);
+            }
+            if (b != c) {
+                return b - c;
+            }
+        }
+        return length - keyLength;
+    }
+
+
+    private static long[] buildFilter(int size, byte[] names, int[] nameOffsets) {
+        long wanted = Math.min(Math.max(64L, (long) size * FILTER_BITS_PER_ENTRY), 1L << 30);
+        long bits = Long.highestOneBit(wanted - 1) << 1;
+        long[] filter = new long[(int) (bits >>> 6)];
+        int mask = (int) (bits - 1);
+        for (int slot = 0; slot < size; slot++) {
+            long hash = hash(names, nameOffsets[slot], nameOffsets[slot + 1]);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32) | 1;
+            for (int i = 0; i < FILTER_HASHES; i++) {
+                int bit = (h1 + i * h2) & mask;
+                filter[bit >>> 6] |= 1L << bit;
+            }
+        }
+        return filter;
+    }
+
+
+    private boolean mightContain(long hash) {
+        int mask = (filter.length << 6) - 1;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < FILTER_HASHES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if ((filter[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /*
+     * FNV-1a over the UTF-8 bytes of the name. ASCII names, the usual case,
+     * are hashed without encoding them.
+     */
+    private static long hash(String name) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 0x80) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                return hash(bytes, 0, bytes.length);
+            }
+            hash = (hash ^ c) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+
+    private static long hash(byte[] bytes, int from, int to) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ (bytes[i] & 0xFF)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+
+    /*
+     * FNV 的低位在名称仅末尾不同时区分度较低，再混合一次
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+
+    static LocalDateTime toLocalDateTime(long dosTime) {
+        try {
+            return LocalDateTime.of((int) (((dosTime >> 25) & 0x7f) + 1980),
+                    (int) ((dosTime >> 21) & 0x0f), (int) ((dosTime >> 16) & 0x1f),
+                    (int) ((dosTime >> 11) & 0x1f), (int) ((dosTime >> 5) & 0x3f),
+                    (int) ((dosTime << 1) & 0x3e));
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+
+    private static long toDosTime(JarEntry entry) {
+        if (entry.getTime() == -1) {
+            return UNKNOWN;
+        }
+        LocalDateTime time = entry.getTimeLocal();
+        int year = time.getYear();
+        if (year < 1980 || year > 2107) {
+            return UNKNOWN;
+        }
+        return ((long) (year - 1980) << 25) | ((long) time.getMonthValue() << 21) |
+                ((long) time.getDayOfMonth() << 16) | ((long) time.getHour() << 11) |
+                ((long) time.getMinute() << 5) | (time.getSecond() >> 1);
+    }
+
+
+    private abstract class SlotIterator<T> implements Iterator<T> {
+        private int next = 0;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public T next() {
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            return get(next++);
+        }
+
+        abstract T get(int slot);
+    }
+
+
+    /**
+     * Collects entries in any order. If a name is added more than once the
+     * last entry added wins.
+     */
+    public static final class Builder {
+        private int count;
+        private byte[][] names;
+        private String[] entryNames;
+        private short[] methods;
+        private long[] crcs;
+        private long[] compressedSizes;
+        private long[] sizes;
+        private long[] localHeaderOffsets;
+        private long[] dosTimes;
+
+        private Builder(int expectedSize) {
+            int capacity = Math.max(expectedSize, 16);
+            names = new byte[capacity][];
+            methods = new short[capacity];
+            crcs = new long[capacity];
+            compressedSizes = new long[capacity];
+            sizes = new long[capacity];
+            localHeaderOffsets = new long[capacity];
+            dosTimes = new long[capacity];
+        }
+
+
+        public Builder add(String name, String entryName, int method, long crc,
+                long compressedSize, long size, long localHeaderOffset, long dosTime) {
+            return add(name.getBytes(StandardCharsets.UTF_8), entryName, method, crc,
+                    compressedSize, size, localHeaderOffset, dosTime);
+        }
+
+
+        /**
+         * @param name          The UTF-8 encoded name the entry is looked up
+         *                          by
+         * @param entryName     The name of the entry in the archive if it
+         *                          differs from {@code name}, otherwise
+         *                          {@code null}
+         */
+        public Builder add(byte[] name, String entryName, int method, long crc,
+                long compressedSize, long size, long localHeaderOffset, long dosTime) {
+            if (count == names.length) {
+                int capacity = count * 2;
+                names = Arrays.copyOf(names, capacity);
+                methods = Arrays.copyOf(methods, capacity);
+                crcs = Arrays.copyOf(crcs, capacity);
+                compressedSizes = Arrays.copyOf(compressedSizes, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+                localHeaderOffsets = Arrays.copyOf(localHeaderOffsets, capacity);
+                dosTimes = Arrays.copyOf(dosTimes, capacity);
+                if (entryNames != null) {
+                    entryNames = Arrays.copyOf(entryNames, capacity);
+                }
+            }
+            if (entryName != null) {
+                if (entryNames == null) {
+                    entryNames = new String[names.length];
+                }
+                entryNames[count] = entryName;
+            }
+            names[count] = name;
+            methods[count] = (short) method;
+            crcs[count] = crc;
+            compressedSizes[count] = compressedSize;
+            sizes[count] = size;
+            localHeaderOffsets[count] = localHeaderOffset;
+            dosTimes[count] = dosTime;
+            count++;
+            return this;
+        }
+
+
+        public CompactEntryTable build() {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = Integer.valueOf(i);
+            }
+            // Stable, so the last of several equal names stays last
+            Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(names[a.intValue()], names[b.intValue()]));
+
+            int unique = 0;
+            int arenaLength = 0;
+            for (int i = 0; i < count; i++) {
+                if (i + 1 < count && Arrays.equals(names[order[i].intValue()], names[order[i + 1].intValue()])) {
+                    order[i] = null;
+                } else {
+                    unique++;
+                    arenaLength += names[order[i].intValue()].length;
+                }
+            }
+
+            byte[] arena = new byte[arenaLength];
+            int[] nameOffsets = new int[unique + 1];
+            short[] tableMethods = new short[unique];
+            long[] tableCrcs = new long[unique];
+            long[] tableCompressedSizes = new long[unique];
+            long[] tableSizes = new long[unique];
+            long[] tableLocalHeaderOffsets = new long[unique];
+            long[] tableDosTimes = new long[unique];
+            String[] tableEntryNames = entryNames == null ? null : new String[unique];
+            int slot = 0;
+            int position = 0;
+            for (Integer index : order) {
+                if (index == null) {
+                    continue;
+                }
+                int i = index.intValue();
+                nameOffsets[slot] = position;
+                System.arraycopy(names[i], 0, arena, position, names[i].length);
+                position += names[i].length;
+                tableMethods[slot] = methods[i];
+                tableCrcs[slot] = crcs[i];
+                tableCompressedSizes[slot] = compressedSizes[i];
+                tableSizes[slot] = sizes[i];
+                tableLocalHeaderOffsets[slot] = localHeaderOffsets[i];
+                tableDosTimes[slot] = dosTimes[i];
+                if (tableEntryNames != null) {
+                    tableEntryNames[slot] = entryNames[i];
+                }
+                slot++;
+            }
+            nameOffsets[unique] = position;
+            return new CompactEntryTable(unique, arena, nameOffsets, tableMethods, tableCrcs,
+                    tableCompressedSizes, tableSizes, tableLocalHeaderOffsets, tableDosTimes,
+                    tableEntryNames);
+        }
+    }
+}
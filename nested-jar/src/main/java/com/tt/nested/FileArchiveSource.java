@@ -0,0 +1,217 @@
+package com.tt.nested;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * {@link ArchiveSource} over a byte range of a file on disk. The range is
+ * either the whole file or a STORED archive nested (at any depth) inside it,
+ * so every read is a single positioned {@link FileChannel} read. Reads share
+ * the channel that {@link NestedJarFilePool} holds for the file rather than
+ * opening the file each time.
+ */
+public final class FileArchiveSource implements ArchiveSource {
+
+    private final Path file;
+    private final long offset;
+    private final long length;
+    private final long crc;
+    // 文件在句柄池中的键，切片共用，首次读取时计算
+    private volatile String channelKey;
+
+    public FileArchiveSource(Path file, long offset, long length) {
+        this(file, offset, length, -1);
+    }
+
+
+    public FileArchiveSource(Path file, long offset, long length, long crc) {
+        this(file, offset, length, crc, null);
+    }
+
+
+    private FileArchiveSource(Path file, long offset, long length, long crc, String channelKey) {
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        this.crc = crc;
+        this.channelKey = channelKey;
+    }
+
+
+    public Path getFile() {
+        return file;
+    }
+
+
+    /**
+     * @return the absolute offset of this archive within {@link #getFile()}
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+
+    /**
+     * @return the CRC-32 of this archive as recorded by the central directory
+     *         of the archive that contains it, or -1 if unknown, e.g. for a
+     *         file on disk
+     */
+    public long getCrc() {
+        return crc;
+    }
+
+
+    /**
+     * @return a source for the given range of this archive
+     */
+    public FileArchiveSource slice(long position, long length) {
+        return new FileArchiveSource(file, offset + position, length, -1, channelKey);
+    }
+
+
+    /**
+     * @return a source for a STORED entry of this archive with the given CRC
+     */
+    public FileArchiveSource slice(long position, long length, long crc) {
+        return new FileArchiveSource(file, offset + position, length, crc, channelKey);
+    }
+
+
+    @Override
+    public InputStream openStream(long position, long length) throws IOException {
+        checkRange(position, length);
+        NestedJarFilePool pool = NestedJarFilePool.getInstance();
+        String key = getChannelKey();
+        return new ChannelInputStream(pool, key, pool.acquireChannel(key, file), offset + position, length);
+    }
+
+
+    @Override
+    public void readFully(long position, byte[] b, int off, int len) throws IOException {
+        checkRange(position, len);
+        NestedJarFilePool pool = NestedJarFilePool.getInstance();
+        String key = getChannelKey();
+        FileChannel channel = pool.acquireChannel(key, file);
+        try {
+            readFully(channel, offset + position, b, off, len);
+        } finally {
+            pool.releaseChannel(key);
+        }
+    }
+
+
+    private String getChannelKey() {
+        String key = channelKey;
+        if (key == null) {
+            key = NestedJarFilePool.getKey(file.toString(), "");
+            channelKey = key;
+        }
+        return key;
+    }
+
+
+    static void readFully(FileChannel channel, long position, byte[] b, int off, int len)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, pos);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            pos += n;
+        }
+    }
+
+
+    private void checkRange(long position, long len) throws IOException {
+        if (position < 0 || len < 0 || position + len > length) {
+            throw new EOFException("Range [" + position + ", " + (position + len) +
+                    ") outside archive of length " + length);
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return file + "@" + offset + "+" + length;
+    }
+
+
+    /**
+     * Reads a fixed range of a shared channel with positioned reads and
+     * returns the channel to the pool when closed.
+     */
+    static final class ChannelInputStream extends InputStream {
+
+        private final NestedJarFilePool pool;
+        private final String key;
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+        private boolean closed;
+
+        ChannelInputStream(NestedJarFilePool pool, String key, FileChannel channel, long position, long length) {
+            this.pool = pool;
+            this.key = key;
+            this.channel = channel;
+            this.position = position;
+            this.end = position + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (position >= end) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                pool.releaseChannel(key);
+            }
+        }
+    }
+}
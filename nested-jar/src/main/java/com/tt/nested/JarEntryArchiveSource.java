@@ -0,0 +1,110 @@
+package com.tt.nested;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * {@link ArchiveSource} over a JAR that is stored as an entry of another
+ * {@link JarFile}. Positioned reads skip to the requested offset; when the
+ * entry is STORED the skip is a seek rather than a read.
+ */
+public class JarEntryArchiveSource implements ArchiveSource {
+
+    private final JarFile container;
+    private final JarEntry entry;
+
+    public JarEntryArchiveSource(JarFile container, JarEntry entry) {
+        this.container = container;
+        this.entry = entry;
+    }
+
+
+    @Override
+    public long length() {
+        return entry.getSize();
+    }
+
+
+    @Override
+    public InputStream openStream(long position, long length) throws IOException {
+        InputStream is = container.getInputStream(entry);
+        try {
+            long remaining = position;
+            while (remaining > 0) {
+                long skipped = is.skip(remaining);
+                if (skipped <= 0) {
+                    if (is.read() < 0) {
+                        throw new EOFException();
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+        } catch (IOException e) {
+            is.close();
+            throw e;
+        }
+        return new BoundedInputStream(is, length);
+    }
+
+
+    /**
+     * Limits a stream to a fixed number of bytes.
+     */
+    static final class BoundedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            if (skipped > 0) {
+                remaining -= skipped;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
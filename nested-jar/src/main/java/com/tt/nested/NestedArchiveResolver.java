@@ -0,0 +1,112 @@
+package com.tt.nested;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+/**
+ * Resolves a chain of nested archives, such as
+ * {@code base.jar!/BOOT-INF/classes/SOFA-ARK/biz/module-ark-biz.jar!/lib/module-support.jar},
+ * to the absolute byte range of the innermost archive within the outer file.
+ * This is only possible when every layer is STORED; if any layer is
+ * compressed the caller has to stream it instead.
+ */
+public final class NestedArchiveResolver {
+
+    private static final String SEPARATOR = "!/";
+
+    private NestedArchiveResolver() {
+    }
+
+
+    /**
+     * Resolves a nested archive inside a file.
+     *
+     * @param file          The outer archive on the file system
+     * @param nestedPath    The path of the nested archive, with one
+     *                          {@code "!/"} separator per nesting level. May
+     *                          be empty to refer to the outer file itself.
+     *
+     * @return the byte range of the innermost archive or {@code null} if a
+     *         layer is compressed and cannot be addressed directly
+     *
+     * @throws IOException if a layer cannot be read or does not exist
+     */
+    public static FileArchiveSource resolve(Path file, String nestedPath) throws IOException {
+        FileArchiveSource source = new FileArchiveSource(file, 0, Files.size(file));
+        for (String layer : splitPath(nestedPath)) {
+            ZipCentralDirectory cen = ZipCentralDirectory.read(source);
+            int record = cen.findRecord(layer);
+            if (record < 0) {
+                throw new FileNotFoundException("[" + layer + "] not found in [" + source + "]");
+            }
+            if (cen.getMethod(record) != ZipEntry.STORED) {
+                return null;
+            }
+            long dataOffset = ZipCentralDirectory.getDataOffset(source, cen.getLocalHeaderOffset(record));
+            source = source.slice(dataOffset, cen.getSize(record), cen.getCrc(record));
+        }
+        return source;
+    }
+
+
+    /**
+     * Resolves a URL of the form {@code jar:file:/outer.jar!/a.jar!/b.jar}
+     * (optionally ending in {@code "!/"}).
+     *
+     * @return the byte range of the innermost archive or {@code null} if the
+     *         URL is not a nested file based JAR URL or a layer is compressed
+     *
+     * @throws IOException if a layer cannot be read or does not exist
+     */
+    public static FileArchiveSource resolve(URL url) throws IOException {
+        String spec = url.toString();
+        if (!spec.startsWith("jar:file:")) {
+            return null;
+        }
+        spec = spec.substring(4);
+        if (spec.endsWith(SEPARATOR)) {
+            spec = spec.substring(0, spec.length() - SEPARATOR.length());
+        }
+        int separator = spec.indexOf(SEPARATOR);
+        if (separator < 0) {
+            return null;
+        }
+        Path file;
+        try {
+            file = Paths.get(new URI(spec.substring(0, separator)));
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+        return resolve(file, spec.substring(separator + SEPARATOR.length()));
+    }
+
+
+    static List<String> splitPath(String nestedPath) {
+        List<String> layers = new ArrayList<>();
+        int start = 0;
+        while (start < nestedPath.length()) {
+            int end = nestedPath.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                end = nestedPath.length();
+            }
+            String layer = nestedPath.substring(start, end);
+            if (layer.startsWith("/")) {
+                layer = layer.substring(1);
+            }
+            if (!layer.isEmpty()) {
+                layers.add(layer);
+            }
+            start = end + SEPARATOR.length();
+        }
+        return layers;
+    }
+}
@@ -0,0 +1,312 @@
+package com.tt.nested;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Size bounded LRU cache of the uncompressed content of entries in nested
+ * JARs. Entries are grouped by biz so that one module cannot evict the hot
+ * resources of every other module: each biz has its own limit in addition to
+ * the global limit.
+ * <p>
+ * Lookups take no lock, so concurrent reads of hot resources do not
+ * serialise; only caching new content and evicting take a lock.
+ * <p>
+ * The shared instance is configured with system properties and is disabled
+ * unless {@value #MAX_SIZE_PROPERTY} is set:
+ * <ul>
+ * <li>{@value #MAX_SIZE_PROPERTY} - global limit in bytes</li>
+ * <li>{@value #MAX_SIZE_PER_BIZ_PROPERTY} - limit per biz in bytes, defaults
+ *     to the global limit</li>
+ * <li>{@value #MAX_OBJECT_SIZE_PROPERTY} - largest entry that is cached,
+ *     defaults to 512KB</li>
+ * </ul>
+ */
+public final class NestedContentCache {
+
+    public static final String MAX_SIZE_PROPERTY = "koupleless.nested.cache.maxSize";
+    public static final String MAX_SIZE_PER_BIZ_PROPERTY = "koupleless.nested.cache.maxSizePerBiz";
+    public static final String MAX_OBJECT_SIZE_PROPERTY = "koupleless.nested.cache.maxObjectSize";
+
+    private static final long DEFAULT_MAX_OBJECT_SIZE = 512 * 1024;
+
+    private static final NestedContentCache INSTANCE = new NestedContentCache(
+            Long.getLong(MAX_SIZE_PROPERTY, 0),
+            Long.getLong(MAX_SIZE_PER_BIZ_PROPERTY, Long.getLong(MAX_SIZE_PROPERTY, 0)),
+            Long.getLong(MAX_OBJECT_SIZE_PROPERTY, DEFAULT_MAX_OBJECT_SIZE));
+
+    static {
+        NestedReleaseRegistry.register(INSTANCE::removeBiz);
+    }
+
+    private final long maxSize;
+    private final long maxSizePerBiz;
+    private final long maxObjectSize;
+
+    // 读取不加锁；写入、淘汰与按模块清除在 evictionLock 下进行
+    private final ConcurrentHashMap<Key,Node> entries = new ConcurrentHashMap<>();
+    private final Object evictionLock = new Object();
+    private final Map<String,BizEntries> bizs = new HashMap<>();
+    private final ArrayDeque<Node> clock = new ArrayDeque<>();
+    private int staleInClock;
+    private long size;
+
+    public NestedContentCache(long maxSize, long maxSizePerBiz, long maxObjectSize) {
+        this.maxSize = maxSize;
+        this.maxSizePerBiz = Math.min(maxSizePerBiz, maxSize);
+        this.maxObjectSize = Math.min(maxObjectSize, this.maxSizePerBiz);
+    }
+
+
+    /**
+     * @return the cache configured from system properties
+     */
+    public static NestedContentCache getInstance() {
+        return INSTANCE;
+    }
+
+
+    public boolean isEnabled() {
+        return maxObjectSize > 0;
+    }
+
+
+    /**
+     * @param size  The uncompressed size of an entry, or -1 if unknown
+     *
+     * @return {@code true} if an entry of the given size may be cached
+     */
+    public boolean isCacheable(long size) {
+        return size >= 0 && size <= maxObjectSize && maxObjectSize > 0;
+    }
+
+
+    /**
+     * Looks up an entry without taking a lock. The access is recorded by
+     * marking the entry referenced, which spares it from the next eviction.
+     *
+     * @return the cached content, which callers must not modify, or
+     *         {@code null}
+     */
+    public byte[] get(String biz, String archive, String name) {
+        Node node = entries.get(new Key(biz, archive, name));
+        if (node == null) {
+            return null;
+        }
+        // 已标记时不再写入，热点条目的并发读取不争用同一缓存行
+        if (!node.referenced || !node.referencedInBiz) {
+            node.referenced = true;
+            node.referencedInBiz = true;
+        }
+        return node.content;
+    }
+
+
+    /**
+     * Caches the content of an entry, evicting the least recently used
+     * entries of the same biz, then of any biz, until both limits are met.
+     * Recency is approximated with a second chance (CLOCK) queue per biz
+     * and one across bizs, so that eviction only visits the entries of the
+     * biz that is over its limit.
+     *
+     * @return {@code true} if the content was cached
+     */
+    public boolean put(String biz, String archive, String name, byte[] content) {
+        if (!isCacheable(content.length)) {
+            return false;
+        }
+        Node node = new Node(new Key(biz, archive, name), content);
+        synchronized (evictionLock) {
+            Node previous = entries.put(node.key, node);
+            if (previous != null) {
+                remove(previous, true, true);
+            }
+            BizEntries bizEntries = bizs.computeIfAbsent(biz, BizEntries::new);
+            bizEntries.clock.addLast(node);
+            bizEntries.size += content.length;
+            clock.addLast(node);
+            size += content.length;
+
+            evictFromBiz(bizEntries, node);
+            evictFromAll(node);
+            compact(bizEntries);
+        }
+        return true;
+    }
+
+
+    /**
+     * Drops every cached entry of the given biz and of the archives nested
+     * inside it.
+     *
+     * @return the number of entries dropped
+     */
+    public int removeBiz(String biz) {
+        int removed = 0;
+        synchronized (evictionLock) {
+            Iterator<BizEntries> iter = bizs.values().iterator();
+            while (iter.hasNext()) {
+                BizEntries bizEntries = iter.next();
+                if (!NestedReleaseRegistry.isWithin(bizEntries.biz, biz)) {
+                    continue;
+                }
+                iter.remove();
+                for (Node node : bizEntries.clock) {
+                    if (!node.removed) {
+                        remove(node, false, true);
+                        removed++;
+                    }
+                }
+            }
+            compact(null);
+        }
+        return removed;
+    }
+
+
+    public long getSize() {
+        synchronized (evictionLock) {
+            return size;
+        }
+    }
+
+
+    public long getSize(String biz) {
+        synchronized (evictionLock) {
+            BizEntries bizEntries = bizs.get(biz);
+            return bizEntries == null ? 0 : bizEntries.size;
+        }
+    }
+
+
+    /*
+     * 以下方法须持有 evictionLock。条目被一个队列淘汰后仍留在另一个队列中，标记为 removed，由 compact() 批量清理
+     */
+    private void evictFromBiz(BizEntries bizEntries, Node added) {
+        // 每个条目最多获得一次二次机会，循环次数有上限
+        int budget = 2 * bizEntries.clock.size();
+        while (bizEntries.size > maxSizePerBiz && budget-- > 0) {
+            Node node = bizEntries.clock.pollFirst();
+            if (node.removed) {
+                bizEntries.stale--;
+            } else if (node == added || node.referencedInBiz) {
+                node.referencedInBiz = false;
+                bizEntries.clock.addLast(node);
+            } else {
+                remove(node, false, true);
+            }
+        }
+    }
+
+
+    private void evictFromAll(Node added) {
+        int budget = 2 * clock.size();
+        while (size > maxSize && budget-- > 0) {
+            Node node = clock.pollFirst();
+            if (node.removed) {
+                staleInClock--;
+            } else if (node == added || node.referenced) {
+                node.referenced = false;
+                clock.addLast(node);
+            } else {
+                remove(node, true, false);
+            }
+        }
+    }
+
+
+    private void remove(Node node, boolean inBizClock, boolean inClock) {
+        node.removed = true;
+        entries.remove(node.key, node);
+        int length = node.content.length;
+        size -= length;
+        if (inClock) {
+            staleInClock++;
+        }
+        BizEntries bizEntries = bizs.get(node.key.biz);
+        if (bizEntries != null) {
+            bizEntries.size -= length;
+            if (inBizClock) {
+                bizEntries.stale++;
+            }
+            if (bizEntries.size == 0) {
+                bizs.remove(node.key.biz);
+            }
+        }
+    }
+
+
+    private void compact(BizEntries bizEntries) {
+        if (staleInClock > clock.size() / 2) {
+            clock.removeIf((node) -> node.removed);
+            staleInClock = 0;
+        }
+        if (bizEntries != null && bizEntries.stale > bizEntries.clock.size() / 2) {
+            bizEntries.clock.removeIf((node) -> node.removed);
+            bizEntries.stale = 0;
+        }
+    }
+
+
+    private static final class Node {
+        private final Key key;
+        private final byte[] content;
+        // 自上次经过淘汰队列以来是否被读取，分别用于全局及模块内的淘汰
+        private volatile boolean referenced;
+        private volatile boolean referencedInBiz;
+        private boolean removed;
+
+        Node(Key key, byte[] content) {
+            this.key = key;
+            this.content = content;
+        }
+    }
+
+
+    private static final class BizEntries {
+        private final String biz;
+        private final ArrayDeque<Node> clock = new ArrayDeque<>();
+        private int stale;
+        private long size;
+
+        BizEntries(String biz) {
+            this.biz = biz;
+        }
+    }
+
+
+    private static final class Key {
+        private final String biz;
+        private final String archive;
+        private final String name;
+        private final int hash;
+
+        Key(String biz, String archive, String name) {
+            this.biz = biz;
+            this.archive = archive;
+            this.name = name;
+            this.hash = Objects.hash(biz, archive, name);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return biz.equals(other.biz) && archive.equals(other.archive) && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.tt.nested;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarFile;
+
+/**
+ * Shared, reference counted {@link JarFile} handles for archives nested in a
+ * file on disk, keyed by the canonical nested path. Every reader of the same
+ * biz archive shares one handle, which stays open while it is in use and is
+ * closed once it has been idle for longer than
+ * {@value #IDLE_TIMEOUT_PROPERTY} milliseconds (60s by default) or when the
+ * biz it belongs to is released.
+ * <p>
+ * Nested archives are opened through the {@code jar:} URL handler of the
+ * running launcher, which keeps the enclosing archives open for as long as
+ * the nested handle is open.
+ * <p>
+ * The pool also holds one read-only {@link FileChannel} per file on disk,
+ * shared by every positioned read of the archives nested in that file (see
+ * {@link FileArchiveSource}). Channels have the same lifetime as handles:
+ * they are closed once idle or when the biz whose archive is the file is
+ * released.
+ */
+public final class NestedJarFilePool {
+
+    public static final String IDLE_TIMEOUT_PROPERTY = "koupleless.nested.pool.idleTimeout";
+
+    private static final String SEPARATOR = "!/";
+
+    private static final NestedJarFilePool INSTANCE =
+            new NestedJarFilePool(Long.getLong(IDLE_TIMEOUT_PROPERTY, 60_000L));
+
+    static {
+        NestedReleaseRegistry.register(INSTANCE::releaseAll);
+    }
+
+    private final long idleTimeoutNanos;
+    private final Map<String,PooledHandle<JarFile>> handles = new ConcurrentHashMap<>();
+    private final Map<String,PooledHandle<FileChannel>> channels = new ConcurrentHashMap<>();
+    // 通道在每次读取时获取，空闲检查按超时间隔进行，不在每次获取时遍历
+    private volatile long nextChannelEviction;
+
+    public NestedJarFilePool(long idleTimeoutMillis) {
+        this.idleTimeoutNanos = idleTimeoutMillis * 1_000_000L;
+        this.nextChannelEviction = System.nanoTime() + idleTimeoutNanos;
+    }
+
+
+    public static NestedJarFilePool getInstance() {
+        return INSTANCE;
+    }
+
+
+    /**
+     * @param base          The archive on the file system
+     * @param nestedPath    The path of the nested archive within {@code base},
+     *                          with one {@code "!/"} separator per nesting
+     *                          level, or the empty string for {@code base}
+     *                          itself
+     *
+     * @return the key of the handle for the nested archive
+     */
+    public static String getKey(String base, String nestedPath) {
+        String canonicalBase = Paths.get(base).toAbsolutePath().normalize().toString();
+        if (nestedPath.isEmpty()) {
+            return canonicalBase;
+        }
+        return canonicalBase + SEPARATOR + nestedPath;
+    }
+
+
+    /**
+     * @param url   A {@code file:} URL or a, possibly nested,
+     *                  {@code jar:file:} URL of an archive
+     *
+     * @return the key of the handle for the archive or {@code null} if the
+     *         URL does not refer to an archive on the file system
+     */
+    public static String getKey(URL url) {
+        String spec = url.toString();
+        if (spec.startsWith("jar:")) {
+            spec = spec.substring(4);
+        }
+        if (spec.endsWith(SEPARATOR)) {
+            spec = spec.substring(0, spec.length() - SEPARATOR.length());
+        }
+        if (!spec.startsWith("file:")) {
+            return null;
+        }
+        int separator = spec.indexOf(SEPARATOR);
+        String outer = separator < 0 ? spec : spec.substring(0, separator);
+        try {
+            String base = new File(new URI(outer)).getPath();
+            return getKey(base, separator < 0 ? "" : spec.substring(separator + SEPARATOR.length()));
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * Obtains the shared handle for a nested archive, opening it if
+     * necessary. Every call must be matched by a call to
+     * {@link #release(String, String)}.
+     *
+     * @param base          The archive on the file system
+     * @param nestedPath    The path of the nested archive within {@code base}
+     *
+     * @return the shared handle, which callers must not close
+     *
+     * @throws IOException if the archive cannot be opened
+     */
+    public JarFile acquire(String base, String nestedPath) throws IOException {
+        evictIdle();
+        String key = getKey(base, nestedPath);
+        while (true) {
+            PooledHandle<JarFile> pooled = handles.computeIfAbsent(key, k -> new PooledHandle<>());
+            synchronized (pooled) {
+                if (pooled.closed) {
+                    // Evicted concurrently, retry with a new handle
+                    continue;
+                }
+                if (pooled.handle == null) {
+                    try {
+                        pooled.handle = open(base, nestedPath);
+                    } catch (IOException | RuntimeException e) {
+                        pooled.close(handles, key);
+                        throw e;
+                    }
+                }
+                pooled.useCount++;
+                return pooled.handle;
+            }
+        }
+    }
+
+
+    /**
+     * Releases a handle obtained from {@link #acquire(String, String)}.
+     */
+    public void release(String base, String nestedPath) {
+        release(handles, getKey(base, nestedPath));
+    }
+
+
+    /**
+     * Obtains the shared read-only channel of a file on disk, opening it if
+     * necessary. Positioned reads on the channel are safe from any number of
+     * threads. Every call must be matched by a call to
+     * {@link #releaseChannel(String)}.
+     *
+     * @param key   The key of the file, as returned by
+     *                  {@link #getKey(String, String)} with an empty nested
+     *                  path
+     * @param file  The file
+     *
+     * @return the shared channel, which callers must not close
+     *
+     * @throws IOException if the file cannot be opened
+     */
+    public FileChannel acquireChannel(String key, Path file) throws IOException {
+        long now = System.nanoTime();
+        if (now - nextChannelEviction >= 0) {
+            nextChannelEviction = now + idleTimeoutNanos;
+            evictIdle(channels, now);
+        }
+        while (true) {
+            PooledHandle<FileChannel> pooled = channels.computeIfAbsent(key, k -> new PooledHandle<>());
+            synchronized (pooled) {
+                if (pooled.closed) {
+                    continue;
+                }
+                // 读取线程被中断时通道会被关闭，此时重新打开
+                if (pooled.handle == null || !pooled.handle.isOpen()) {
+                    try {
+                        pooled.handle = FileChannel.open(file, StandardOpenOption.READ);
+                    } catch (IOException | RuntimeException e) {
+                        pooled.close(channels, key);
+                        throw e;
+                    }
+                }
+                pooled.useCount++;
+                return pooled.handle;
+            }
+        }
+    }
+
+
+    /**
+     * Releases a channel obtained from {@link #acquireChannel(String, Path)}.
+     */
+    public void releaseChannel(String key) {
+        release(channels, key);
+    }
+
+
+    /**
+     * Closes every handle for the given archive and for any archive nested
+     * inside it. Handles still in use are closed when their last user
+     * releases them.
+     *
+     * @param key   The key, as returned by {@link #getKey(String, String)},
+     *                  of the archive, typically a biz archive that has been
+     *                  uninstalled
+     *
+     * @return the number of handles released
+     */
+    public int releaseAll(String key) {
+        return releaseAll(handles, key) + releaseAll(channels, key);
+    }
+
+
+    /**
+     * Closes handles and channels that nobody has used for longer than the
+     * idle timeout.
+     */
+    public void evictIdle() {
+        long now = System.nanoTime();
+        evictIdle(handles, now);
+        evictIdle(channels, now);
+    }
+
+
+    /**
+     * @param key   The key, as returned by {@link #getKey(String, String)},
+     *                  of an archive
+     *
+     * @return the number of users of the open handle for the archive, or -1
+     *         if no handle is open for it
+     */
+    public int getUseCount(String key) {
+        PooledHandle<JarFile> pooled = handles.get(key);
+        if (pooled == null) {
+            return -1;
+        }
+        synchronized (pooled) {
+            return pooled.handle == null ? -1 : pooled.useCount;
+        }
+    }
+
+
+    /**
+     * @return the number of open handles, including shared channels
+     */
+    public int size() {
+        return handles.size() + channels.size();
+    }
+
+
+    private static <T extends Closeable> void release(Map<String,PooledHandle<T>> pooledHandles, String key) {
+        PooledHandle<T> pooled = pooledHandles.get(key);
+        if (pooled == null) {
+            return;
+        }
+        synchronized (pooled) {
+            if (pooled.useCount > 0) {
+                pooled.useCount--;
+            }
+            pooled.lastUsed = System.nanoTime();
+            if (pooled.useCount == 0 && pooled.closeWhenIdle) {
+                pooled.close(pooledHandles, key);
+            }
+        }
+    }
+
+
+    private static <T extends Closeable> int releaseAll(Map<String,PooledHandle<T>> pooledHandles, String key) {
+        int released = 0;
+        for (Map.Entry<String,PooledHandle<T>> entry : pooledHandles.entrySet()) {
+            String handleKey = entry.getKey();
+            if (NestedReleaseRegistry.isWithin(handleKey, key)) {
+                PooledHandle<T> pooled = entry.getValue();
+                synchronized (pooled) {
+                    if (pooled.useCount == 0) {
+                        pooled.close(pooledHandles, handleKey);
+                    } else {
+                        pooled.closeWhenIdle = true;
+                    }
+                }
+                released++;
+            }
+        }
+        return released;
+    }
+
+
+    private <T extends Closeable> void evictIdle(Map<String,PooledHandle<T>> pooledHandles, long now) {
+        for (Map.Entry<String,PooledHandle<T>> entry : pooledHandles.entrySet()) {
+            PooledHandle<T> pooled = entry.getValue();
+            synchronized (pooled) {
+                if (pooled.useCount == 0 && pooled.handle != null &&
+                        now - pooled.lastUsed >= idleTimeoutNanos) {
+                    pooled.close(pooledHandles, entry.getKey());
+                }
+            }
+        }
+    }
+
+
+    private static JarFile open(String base, String nestedPath) throws IOException {
+        if (nestedPath.isEmpty()) {
+            return new JarFile(new File(base));
+        }
+        URL url = new URL("jar:file:" + base + SEPARATOR + nestedPath + SEPARATOR);
+        JarURLConnection connection = (JarURLConnection) url.openConnection();
+        // 句柄由连接池管理生命周期，不使用 URL 连接缓存
+        connection.setUseCaches(false);
+        return connection.getJarFile();
+    }
+
+
+    private static final class PooledHandle<T extends Closeable> {
+        private T handle;
+        private int useCount;
+        private long lastUsed = System.nanoTime();
+        private boolean closeWhenIdle;
+        private boolean closed;
+
+        /*
+         * Must be called while holding this handle's monitor.
+         */
+        void close(Map<String,PooledHandle<T>> handles, String key) {
+            closed = true;
+            handles.remove(key, this);
+            if (handle != null) {
+                try {
+                    handle.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+                handle = null;
+            }
+        }
+    }
+}
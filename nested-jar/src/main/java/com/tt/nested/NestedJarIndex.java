@@ -0,0 +1,363 @@
+package com.tt.nested;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipException;
+
+/**
+ * Offset index of a JAR, built once from its central directory. Each entry
+ * records where its local header lives so a single entry can be read without
+ * streaming over, and inflating, every entry in front of it.
+ * <p>
+ * The index can be written at build time as a sidecar entry next to the
+ * nested JAR (see {@link #getSidecarName(String)}) together with the JAR's
+ * manifest and multi-release flag, so that loading it at runtime requires no
+ * inflation at all.
+ * <p>
+ * Entries are held in a {@link CompactEntryTable} rather than one object per
+ * entry.
+ */
+public final class NestedJarIndex {
+
+    /**
+     * Directory of the enclosing archive holding one sidecar index per
+     * nested JAR.
+     */
+    public static final String SIDECAR_PREFIX = "META-INF/resource-index/";
+    public static final String SIDECAR_SUFFIX = ".idx";
+
+    private static final int SIDECAR_MAGIC = 0x4B4E4A49;
+    private static final int SIDECAR_VERSION = 1;
+
+    private final CompactEntryTable entries;
+    private final Boolean multiRelease;
+    private final byte[] manifest;
+
+    private NestedJarIndex(CompactEntryTable entries, Boolean multiRelease, byte[] manifest) {
+        this.entries = entries;
+        this.multiRelease = multiRelease;
+        this.manifest = manifest;
+    }
+
+
+    /**
+     * Builds the index from the central directory of the given archive.
+     *
+     * @param source    The JAR to index
+     *
+     * @return the index
+     *
+     * @throws IOException if the central directory cannot be read
+     */
+    public static NestedJarIndex build(ArchiveSource source) throws IOException {
+        ZipCentralDirectory cen = ZipCentralDirectory.read(source);
+        CompactEntryTable.Builder entries = CompactEntryTable.builder(cen.getEntryCount());
+        for (int record = cen.firstRecord(); record >= 0; record = cen.nextRecord(record)) {
+            byte[] name = new byte[cen.getNameLength(record)];
+            cen.copyName(record, name, 0);
+            entries.add(name, null, cen.getMethod(record), cen.getCrc(record),
+                    cen.getCompressedSize(record), cen.getSize(record),
+                    cen.getLocalHeaderOffset(record), cen.getDosTime(record));
+        }
+        return new NestedJarIndex(entries.build(), null, null);
+    }
+
+
+    /**
+     * Builds the index from the central directory of the given archive and
+     * also reads its manifest so that the result can be written as a sidecar.
+     *
+     * @param source    The JAR to index
+     *
+     * @return the index
+     *
+     * @throws IOException if the archive cannot be read
+     */
+    public static NestedJarIndex buildWithManifest(ArchiveSource source) throws IOException {
+        NestedJarIndex index = build(source);
+        byte[] manifest = null;
+        boolean multiRelease = false;
+        try (InputStream is = index.getInputStream(source, JarFile.MANIFEST_NAME)) {
+            if (is != null) {
+                manifest = is.readAllBytes();
+                String value = new Manifest(new ByteArrayInputStream(manifest))
+                        .getMainAttributes().getValue("Multi-Release");
+                multiRelease = Boolean.parseBoolean(value);
+            }
+        }
+        return new NestedJarIndex(index.entries, Boolean.valueOf(multiRelease), manifest);
+    }
+
+
+    public Entry getEntry(String name) {
+        int slot = entries.indexOf(name);
+        return slot < 0 ? null : new Entry(entries, slot);
+    }
+
+
+    /**
+     * @return the entries of this index, keyed by name
+     */
+    public CompactEntryTable getEntryTable() {
+        return entries;
+    }
+
+
+    public int size() {
+        return entries.size();
+    }
+
+
+    /**
+     * @return an estimate of the heap retained by this index, in bytes
+     */
+    public long estimateHeapSize() {
+        return entries.estimateHeapSize() + (manifest == null ? 0 : manifest.length + 16);
+    }
+
+
+    /**
+     * @return whether the JAR's manifest declares it to be multi-release, or
+     *         {@code null} if this index was built without reading the
+     *         manifest
+     */
+    public Boolean getMultiRelease() {
+        return multiRelease;
+    }
+
+
+    /**
+     * @return {@code true} if the manifest was recorded when this index was
+     *         built, even if the JAR has no manifest
+     */
+    public boolean hasManifestInfo() {
+        return multiRelease != null;
+    }
+
+
+    /**
+     * @return the JAR's manifest or {@code null} if it has none or it was
+     *         not recorded when this index was built
+     *
+     * @throws IOException if the recorded manifest is invalid
+     */
+    public Manifest getManifest() throws IOException {
+        if (manifest == null) {
+            return null;
+        }
+        return new Manifest(new ByteArrayInputStream(manifest));
+    }
+
+
+    /**
+     * Opens a single entry by seeking to its local header.
+     *
+     * @param source    The JAR this index was built from
+     * @param name      The name of the entry
+     *
+     * @return a stream over the entry's uncompressed content or {@code null}
+     *         if there is no such entry
+     *
+     * @throws IOException if the entry cannot be read
+     */
+    public InputStream getInputStream(ArchiveSource source, String name) throws IOException {
+        int slot = entries.indexOf(name);
+        if (slot < 0) {
+            return null;
+        }
+        return ZipCentralDirectory.openEntry(source, entries.getLocalHeaderOffset(slot),
+                entries.getMethod(slot), entries.getCompressedSize(slot));
+    }
+
+
+    /**
+     * Creates {@link JarEntry} instances for every entry in this index. No
+     * entry data is read.
+     *
+     * @return a new, mutable map of entry name to entry
+     */
+    public Map<String,JarEntry> toJarEntries() {
+        return new HashMap<>(entries);
+    }
+
+
+    /**
+     * @return the name of the sidecar index for the JAR at
+     *         {@code pathInContainer} within its enclosing archive
+     */
+    public static String getSidecarName(String pathInContainer) {
+        return SIDECAR_PREFIX + pathInContainer + SIDECAR_SUFFIX;
+    }
+
+
+    /**
+     * Writes this index in the sidecar format.
+     *
+     * @param os        The stream to write to
+     * @param jarSize   The size of the indexed JAR, used to detect stale
+     *                      indexes
+     * @param jarCrc    The CRC-32 of the indexed JAR, used to detect stale
+     *                      indexes
+     *
+     * @throws IOException if the stream cannot be written or this index was
+     *         built without reading the manifest
+     */
+    public void writeSidecar(OutputStream os, long jarSize, long jarCrc) throws IOException {
+        if (multiRelease == null) {
+            throw new IllegalStateException("Index was built without the manifest");
+        }
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(SIDECAR_MAGIC);
+        out.writeShort(SIDECAR_VERSION);
+        out.writeLong(jarSize);
+        out.writeInt((int) jarCrc);
+        out.writeBoolean(multiRelease.booleanValue());
+        if (manifest == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(manifest.length);
+            out.write(manifest);
+        }
+        out.writeInt(entries.size());
+        for (int slot = 0; slot < entries.size(); slot++) {
+            byte[] name = entries.getKey(slot).getBytes(StandardCharsets.UTF_8);
+            out.writeShort(name.length);
+            out.write(name);
+            out.writeShort(entries.getMethod(slot));
+            out.writeInt((int) entries.getCrc(slot));
+            out.writeLong(entries.getCompressedSize(slot));
+            out.writeLong(entries.getSize(slot));
+            out.writeLong(entries.getLocalHeaderOffset(slot));
+            out.writeInt((int) entries.getDosTime(slot));
+        }
+        out.flush();
+    }
+
+
+    /**
+     * Reads an index written by {@link #writeSidecar(OutputStream, long, long)}.
+     *
+     * @param is        The stream to read from
+     * @param jarSize   The current size of the indexed JAR
+     * @param jarCrc    The current CRC-32 of the indexed JAR
+     *
+     * @return the index or {@code null} if it was written for different JAR
+     *         content
+     *
+     * @throws IOException if the stream cannot be read or is not an index
+     */
+    public static NestedJarIndex readSidecar(InputStream is, long jarSize, long jarCrc)
+            throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        if (in.readInt() != SIDECAR_MAGIC) {
+            throw new ZipException("Not a nested JAR index");
+        }
+        if (in.readUnsignedShort() != SIDECAR_VERSION) {
+            return null;
+        }
+        if (in.readLong() != jarSize || (in.readInt() & 0xFFFFFFFFL) != jarCrc) {
+            return null;
+        }
+        boolean multiRelease = in.readBoolean();
+        int manifestLength = in.readInt();
+        byte[] manifest = null;
+        if (manifestLength >= 0) {
+            manifest = new byte[manifestLength];
+            in.readFully(manifest);
+        }
+        int count = in.readInt();
+        CompactEntryTable.Builder entries = CompactEntryTable.builder(count);
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[in.readUnsignedShort()];
+            in.readFully(name);
+            entries.add(name, null, in.readUnsignedShort(), in.readInt() & 0xFFFFFFFFL,
+                    in.readLong(), in.readLong(), in.readLong(), in.readInt() & 0xFFFFFFFFL);
+        }
+        return new NestedJarIndex(entries.build(), Boolean.valueOf(multiRelease), manifest);
+    }
+
+
+    /**
+     * Loads the sidecar index of a nested JAR from the archive that encloses
+     * it.
+     *
+     * @param container         The archive enclosing the nested JAR
+     * @param pathInContainer   The path of the nested JAR in the container
+     *
+     * @return the index or {@code null} if the container holds no sidecar
+     *         for the JAR or the sidecar is stale
+     *
+     * @throws IOException if the container cannot be read
+     */
+    public static NestedJarIndex loadSidecar(ArchiveSource container, String pathInContainer)
+            throws IOException {
+        ZipCentralDirectory cen = ZipCentralDirectory.read(container);
+        int sidecar = cen.findRecord(getSidecarName(pathInContainer));
+        if (sidecar < 0) {
+            return null;
+        }
+        int jar = cen.findRecord(pathInContainer);
+        if (jar < 0) {
+            return null;
+        }
+        try (InputStream is = ZipCentralDirectory.openEntry(container,
+                cen.getLocalHeaderOffset(sidecar), cen.getMethod(sidecar),
+                cen.getCompressedSize(sidecar))) {
+            return readSidecar(is, cen.getSize(jar), cen.getCrc(jar));
+        }
+    }
+
+
+    /**
+     * View of a single entry of the index.
+     */
+    public static final class Entry {
+        private final CompactEntryTable table;
+        private final int slot;
+
+        Entry(CompactEntryTable table, int slot) {
+            this.table = table;
+            this.slot = slot;
+        }
+
+
+        public int getMethod() {
+            return table.getMethod(slot);
+        }
+
+
+        public long getCrc() {
+            return table.getCrc(slot);
+        }
+
+
+        public long getCompressedSize() {
+            return table.getCompressedSize(slot);
+        }
+
+
+        public long getSize() {
+            return table.getSize(slot);
+        }
+
+
+        public long getLocalHeaderOffset() {
+            return table.getLocalHeaderOffset(slot);
+        }
+
+
+        public long getDosTime() {
+            return table.getDosTime(slot);
+        }
+    }
+}
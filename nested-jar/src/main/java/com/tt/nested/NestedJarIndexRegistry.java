@@ -0,0 +1,183 @@
+package com.tt.nested;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Registry of the {@link NestedJarIndex} of every distinct nested JAR in
+ * use. Indexes are keyed by the name, size and CRC-32 of the JAR as recorded
+ * in the central directory of the archive that contains it, so that every
+ * biz that ships the same JAR, e.g. the same version of a support library,
+ * shares one immutable index instead of building its own. Heap and build
+ * time then grow with the number of distinct JARs rather than with the
+ * number of bizs.
+ * <p>
+ * Indexes are reference counted: every {@link #acquire} is matched by a
+ * {@link #release} once the index is no longer used, and the index is
+ * dropped when the last user releases it. An index is built once, by the
+ * first caller; concurrent callers for the same JAR wait for that build,
+ * callers for other JARs do not.
+ */
+public final class NestedJarIndexRegistry {
+
+    private static final NestedJarIndexRegistry INSTANCE = new NestedJarIndexRegistry();
+
+    private final Object lock = new Object();
+    private final Map<Key,SharedIndex> indexes = new HashMap<>();
+
+    public NestedJarIndexRegistry() {
+    }
+
+
+    public static NestedJarIndexRegistry getInstance() {
+        return INSTANCE;
+    }
+
+
+    /**
+     * Obtains the shared index of a nested JAR, building it with the given
+     * loader if no other user holds it. If the size or CRC of the JAR is not
+     * known the index is built but not shared, and must not be released.
+     *
+     * @param name      The name of the nested JAR in the archive that
+     *                      contains it
+     * @param size      The uncompressed size of the nested JAR
+     * @param crc       The CRC-32 of the nested JAR
+     * @param loader    Builds the index if it is not held yet
+     *
+     * @return the index
+     *
+     * @throws IOException if the index has to be built and cannot be
+     */
+    public NestedJarIndex acquire(String name, long size, long crc, Loader loader) throws IOException {
+        if (!isShareable(size, crc)) {
+            return loader.load();
+        }
+        Key key = new Key(name, size, crc);
+        SharedIndex shared;
+        boolean build = false;
+        synchronized (lock) {
+            shared = indexes.get(key);
+            if (shared == null) {
+                shared = new SharedIndex();
+                indexes.put(key, shared);
+                build = true;
+            }
+            shared.references++;
+        }
+        if (build) {
+            try {
+                shared.index.complete(loader.load());
+            } catch (IOException | RuntimeException | Error e) {
+                // 构建失败不缓存，下次获取时重新构建
+                synchronized (lock) {
+                    indexes.remove(key, shared);
+                }
+                shared.index.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return shared.index.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+
+    /**
+     * Releases an index obtained from {@link #acquire}. The index is dropped
+     * once every user has released it.
+     */
+    public void release(String name, long size, long crc) {
+        if (!isShareable(size, crc)) {
+            return;
+        }
+        Key key = new Key(name, size, crc);
+        synchronized (lock) {
+            SharedIndex shared = indexes.get(key);
+            if (shared != null && --shared.references <= 0) {
+                indexes.remove(key);
+            }
+        }
+    }
+
+
+    /**
+     * @return the number of distinct nested JARs whose index is held
+     */
+    public int size() {
+        synchronized (lock) {
+            return indexes.size();
+        }
+    }
+
+
+    /**
+     * @return the number of users of the index of the given JAR, 0 if it is
+     *         not held
+     */
+    public int getReferences(String name, long size, long crc) {
+        synchronized (lock) {
+            SharedIndex shared = indexes.get(new Key(name, size, crc));
+            return shared == null ? 0 : shared.references;
+        }
+    }
+
+
+    private static boolean isShareable(long size, long crc) {
+        return size >= 0 && crc >= 0;
+    }
+
+
+    public interface Loader {
+
+        NestedJarIndex load() throws IOException;
+    }
+
+
+    private static final class SharedIndex {
+        private final CompletableFuture<NestedJarIndex> index = new CompletableFuture<>();
+        private int references;
+    }
+
+
+    private static final class Key {
+        private final String name;
+        private final long size;
+        private final long crc;
+
+        Key(String name, long size, long crc) {
+            this.name = name;
+            this.size = size;
+            this.crc = crc;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return size == other.size && crc == other.crc && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return (name.hashCode() * 31 + Long.hashCode(size)) * 31 + Long.hashCode(crc);
+        }
+    }
+}
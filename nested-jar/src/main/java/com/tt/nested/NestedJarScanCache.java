@@ -0,0 +1,225 @@
+package com.tt.nested;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Cache of what the TLD and web fragment scans of a web application read
+ * from a nested JAR: the names of its entries, its manifest and the content
+ * of its {@code META-INF} descriptors. Entries are keyed by the size and
+ * CRC-32 of the JAR as recorded in the central directory of the archive that
+ * contains it, so every biz that ships the same JAR shares one entry, and a
+ * biz whose JARs were already scanned by another biz does not read them
+ * again.
+ * <p>
+ * The shared instance holds at most {@value #MAX_JARS_PROPERTY} JARs, 512 by
+ * default, and is disabled if the property is 0.
+ */
+public final class NestedJarScanCache {
+
+    public static final String MAX_JARS_PROPERTY = "koupleless.nested.scan.maxJars";
+
+    private static final int DEFAULT_MAX_JARS = 512;
+
+    private static final int MAX_DESCRIPTOR_SIZE = 256 * 1024;
+
+    private static final NestedJarScanCache INSTANCE =
+            new NestedJarScanCache(Integer.getInteger(MAX_JARS_PROPERTY, DEFAULT_MAX_JARS));
+
+    private final int maxJars;
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<Key,ScannedJar> jars = new LinkedHashMap<>(64, 0.75f, true);
+
+    public NestedJarScanCache(int maxJars) {
+        this.maxJars = maxJars;
+    }
+
+
+    /**
+     * @return the cache configured from system properties
+     */
+    public static NestedJarScanCache getInstance() {
+        return INSTANCE;
+    }
+
+
+    public boolean isEnabled() {
+        return maxJars > 0;
+    }
+
+
+    /**
+     * @param size  The uncompressed size of the JAR
+     * @param crc   The CRC-32 of the JAR
+     *
+     * @return the scanned JAR or {@code null}
+     */
+    public ScannedJar get(long size, long crc) {
+        if (!isEnabled() || size < 0 || crc < 0) {
+            return null;
+        }
+        synchronized (lock) {
+            return jars.get(new Key(size, crc));
+        }
+    }
+
+
+    /**
+     * Stores a scanned JAR, evicting the least recently used JAR if the
+     * cache is full. Does nothing if the cache is disabled or the identity of
+     * the JAR is unknown.
+     */
+    public void put(long size, long crc, ScannedJar jar) {
+        if (!isEnabled() || size < 0 || crc < 0) {
+            return;
+        }
+        synchronized (lock) {
+            jars.put(new Key(size, crc), jar);
+            while (jars.size() > maxJars) {
+                jars.remove(jars.keySet().iterator().next());
+            }
+        }
+    }
+
+
+    public int size() {
+        synchronized (lock) {
+            return jars.size();
+        }
+    }
+
+
+    public void clear() {
+        synchronized (lock) {
+            jars.clear();
+        }
+    }
+
+
+    /**
+     * @return {@code true} if the content of the given entry is kept by
+     *         {@link ScannedJar#scan(JarInputStream)}: the TLDs, tag files
+     *         and web fragment below {@code META-INF/}
+     */
+    public static boolean isDescriptor(String name) {
+        return name.startsWith("META-INF/") && (name.endsWith(".tld") || name.endsWith(".tag") ||
+                name.endsWith(".tagx") || name.equals("META-INF/web-fragment.xml"));
+    }
+
+
+    /**
+     * Entry names, manifest and descriptors of a JAR, read in a single pass.
+     */
+    public static final class ScannedJar {
+
+        private final CompactEntryTable entries;
+        private final Manifest manifest;
+        private final Map<String,byte[]> descriptors;
+        private final boolean multiRelease;
+
+        private ScannedJar(CompactEntryTable entries, Manifest manifest, Map<String,byte[]> descriptors,
+                boolean multiRelease) {
+            this.entries = entries;
+            this.manifest = manifest;
+            this.descriptors = descriptors;
+            this.multiRelease = multiRelease;
+        }
+
+
+        /**
+         * Reads every entry of a JAR. The stream is left at its end and is
+         * not closed.
+         */
+        public static ScannedJar scan(JarInputStream jar) throws IOException {
+            Manifest manifest = jar.getManifest();
+            Map<String,JarEntry> entries = new HashMap<>();
+            Map<String,byte[]> descriptors = new HashMap<>();
+            JarEntry entry;
+            while ((entry = jar.getNextJarEntry()) != null) {
+                entries.put(entry.getName(), entry);
+                if (isDescriptor(entry.getName()) && entry.getSize() <= MAX_DESCRIPTOR_SIZE) {
+                    byte[] content = jar.readNBytes(MAX_DESCRIPTOR_SIZE + 1);
+                    if (content.length <= MAX_DESCRIPTOR_SIZE) {
+                        descriptors.put(entry.getName(), content);
+                    }
+                }
+            }
+            boolean multiRelease = manifest != null &&
+                    "true".equalsIgnoreCase(manifest.getMainAttributes().getValue(Attributes.Name.MULTI_RELEASE));
+            return new ScannedJar(CompactEntryTable.copyOf(entries), manifest,
+                    Collections.unmodifiableMap(descriptors), multiRelease);
+        }
+
+
+        /**
+         * @return the entries of the JAR, sorted by name, without the
+         *         manifest, as {@link JarInputStream} reports them
+         */
+        public CompactEntryTable getEntries() {
+            return entries;
+        }
+
+
+        /**
+         * @return a copy of the manifest of the JAR or {@code null}
+         */
+        public Manifest getManifest() {
+            return manifest == null ? null : new Manifest(manifest);
+        }
+
+
+        /**
+         * @return the content of the given entry if it is a descriptor kept
+         *         by the scan, otherwise {@code null}
+         */
+        public InputStream getDescriptor(String name) {
+            byte[] content = descriptors.get(name);
+            return content == null ? null : new ByteArrayInputStream(content);
+        }
+
+
+        /**
+         * @return {@code true} if the JAR declares itself multi-release, in
+         *         which case entry names depend on the runtime version and
+         *         callers should read the JAR itself
+         */
+        public boolean isMultiRelease() {
+            return multiRelease;
+        }
+    }
+
+
+    private static final class Key {
+        private final long size;
+        private final long crc;
+
+        Key(long size, long crc) {
+            this.size = size;
+            this.crc = crc;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return size == other.size && crc == other.crc;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(size) * 31 + Long.hashCode(crc);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.tt.nested;
+
+/**
+ * Hook through which the nested resource path reports timings to a metrics
+ * library. No recorder is installed by default, in which case every hook is a
+ * single volatile read: callers fetch the recorder once and skip both the
+ * measurement and the call if it is {@code null}.
+ * <p>
+ * Archives are identified by a key as returned by
+ * {@link NestedJarFilePool#getKey(String, String)}, of the archive itself or
+ * of the archive that contains it, from which the recorder may derive the biz,
+ * and by their path within the outer file.
+ */
+public final class NestedMetrics {
+
+    private static volatile Recorder recorder;
+
+    private NestedMetrics() {
+    }
+
+
+    /**
+     * @return the installed recorder or {@code null} if metrics are disabled
+     */
+    public static Recorder getRecorder() {
+        return recorder;
+    }
+
+
+    /**
+     * Installs the recorder, replacing any previous one.
+     *
+     * @param recorder  The recorder or {@code null} to disable metrics
+     */
+    public static void setRecorder(Recorder recorder) {
+        NestedMetrics.recorder = recorder;
+    }
+
+
+    public interface Recorder {
+
+        /**
+         * Reports that the entry table of a nested JAR was built.
+         */
+        void entryTableBuilt(String key, String archivePath, long nanos, int entries);
+
+        /**
+         * Reports that an entry was read from a nested JAR, once the stream
+         * is closed.
+         *
+         * @param nanos The time spent opening the entry and in read calls
+         * @param bytes The number of uncompressed bytes read
+         */
+        void entryRead(String key, String archivePath, long nanos, long bytes);
+
+        /**
+         * Reports the number of entries passed over while streaming a nested
+         * JAR to reach an entry.
+         */
+        void entriesSkipped(String key, String archivePath, int skipped);
+
+        /**
+         * Reports that a JAR was probed for {@code META-INF/resources}.
+         */
+        void resourceJarProbed(String key, String archivePath, long nanos);
+    }
+}
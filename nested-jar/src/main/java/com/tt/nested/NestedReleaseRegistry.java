@@ -0,0 +1,77 @@
+package com.tt.nested;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Hook through which the handles, indexes and caches of the nested resource
+ * path release what they hold for a biz once it is uninstalled, so that
+ * redeploying a biz many times does not leak heap or file descriptors.
+ * <p>
+ * Every holder registers a {@link Releaser} once, typically for its shared
+ * instance, and the biz lifecycle calls {@link #releaseBiz(String)} after a
+ * biz has stopped. A biz is identified by the key of its archive, as returned
+ * by {@link NestedJarFilePool#getKey(String, String)}; a holder releases what
+ * it holds for that archive and for every archive nested inside it, see
+ * {@link #isWithin(String, String)}.
+ */
+public final class NestedReleaseRegistry {
+
+    private static final String SEPARATOR = "!/";
+
+    private static final List<Releaser> releasers = new CopyOnWriteArrayList<>();
+
+    private NestedReleaseRegistry() {
+    }
+
+
+    public static void register(Releaser releaser) {
+        releasers.add(releaser);
+    }
+
+
+    public static void unregister(Releaser releaser) {
+        releasers.remove(releaser);
+    }
+
+
+    /**
+     * Releases everything held for a biz by every registered holder.
+     *
+     * @param bizKey    The key of the biz archive
+     *
+     * @return the number of handles, indexes and cache entries released
+     */
+    public static int releaseBiz(String bizKey) {
+        int released = 0;
+        for (Releaser releaser : releasers) {
+            released += releaser.release(bizKey);
+        }
+        return released;
+    }
+
+
+    /**
+     * @param key       The key of an archive
+     * @param bizKey    The key of a biz archive
+     *
+     * @return {@code true} if {@code key} is the key of the biz archive or of
+     *         an archive nested inside it
+     */
+    public static boolean isWithin(String key, String bizKey) {
+        return key.startsWith(bizKey) &&
+                (key.length() == bizKey.length() || key.startsWith(SEPARATOR, bizKey.length()));
+    }
+
+
+    public interface Releaser {
+
+        /**
+         * Releases what is held for the archive of a biz and for the archives
+         * nested inside it.
+         *
+         * @return the number of handles, indexes or cache entries released
+         */
+        int release(String bizKey);
+    }
+}
@@ -0,0 +1,519 @@
+package com.tt.nested;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a ZIP archive without inflating any entry.
+ * Records are addressed by their position in the raw central directory so
+ * callers can walk thousands of entries without allocating per entry.
+ */
+public final class ZipCentralDirectory {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_LENGTH = 22;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_LENGTH = 20;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_EOCD_LENGTH = 56;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int CEN_HEADER_LENGTH = 46;
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int LOC_HEADER_LENGTH = 30;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+    private final ArchiveSource source;
+    private final byte[] records;
+    private final int entryCount;
+    // Non-zero when the archive has been prefixed, e.g. by a launch script
+    private final long offsetDelta;
+
+    private ZipCentralDirectory(ArchiveSource source, byte[] records, int entryCount,
+            long offsetDelta) {
+        this.source = source;
+        this.records = records;
+        this.entryCount = entryCount;
+        this.offsetDelta = offsetDelta;
+    }
+
+
+    /**
+     * Locates the end of central directory record and loads the raw central
+     * directory of the given archive.
+     *
+     * @param source    The archive to read
+     *
+     * @return the central directory
+     *
+     * @throws IOException if the source cannot be read or is not a ZIP archive
+     */
+    public static ZipCentralDirectory read(ArchiveSource source) throws IOException {
+        End end = End.locate(source);
+        byte[] records = new byte[(int) end.cenSize];
+        source.readFully(end.cenStart, records, 0, records.length);
+        if (end.entries > 0 && (records.length < CEN_HEADER_LENGTH ||
+                getInt(records, 0) != CEN_SIGNATURE)) {
+            throw new ZipException("Invalid central directory");
+        }
+        return new ZipCentralDirectory(source, records, (int) end.entries, end.cenStart - end.cenOffset);
+    }
+
+
+    /**
+     * Checks whether any entry name starts with the given prefix by streaming
+     * over the raw central directory. Unlike {@link #read(ArchiveSource)} the
+     * central directory is not loaded and no per-entry objects are created,
+     * which makes this suitable for classifying many archives.
+     *
+     * @param source    The archive to check
+     * @param prefix    The name prefix, e.g. {@code "META-INF/resources/"}
+     *
+     * @return {@code true} if at least one entry name starts with the prefix
+     *
+     * @throws IOException if the source cannot be read or is not a ZIP archive
+     */
+    public static boolean hasEntryWithPrefix(ArchiveSource source, String prefix) throws IOException {
+        return scanNames(source, prefix.getBytes(StandardCharsets.UTF_8), false);
+    }
+
+
+    /**
+     * Checks whether the archive has an entry with the given name, or a
+     * directory entry of that name, in the same way as
+     * {@link java.util.zip.ZipFile#getEntry(String)}. Like
+     * {@link #hasEntryWithPrefix} this streams over the raw central
+     * directory.
+     *
+     * @param source    The archive to check
+     * @param name      The entry name, e.g. {@code "META-INF/resources"}
+     *
+     * @return {@code true} if an entry is named {@code name} or
+     *         {@code name + "/"}
+     *
+     * @throws IOException if the source cannot be read or is not a ZIP archive
+     */
+    public static boolean hasEntry(ArchiveSource source, String name) throws IOException {
+        return scanNames(source, name.getBytes(StandardCharsets.UTF_8), true);
+    }
+
+
+    private static boolean scanNames(ArchiveSource source, byte[] bytes, boolean exact) throws IOException {
+        End end = End.locate(source);
+        byte[] header = new byte[CEN_HEADER_LENGTH];
+        byte[] name = new byte[bytes.length];
+        try (InputStream is = new BufferedInputStream(source.openStream(end.cenStart, end.cenSize))) {
+            for (long i = 0; i < end.entries; i++) {
+                readFully(is, header, CEN_HEADER_LENGTH);
+                if (getInt(header, 0) != CEN_SIGNATURE) {
+                    throw new ZipException("Invalid central directory");
+                }
+                int nameLength = getShort(header, 28);
+                int remaining = nameLength + getShort(header, 30) + getShort(header, 32);
+                boolean candidate = exact ? nameLength == bytes.length || nameLength == bytes.length + 1 :
+                        nameLength >= bytes.length;
+                if (candidate) {
+                    readFully(is, name, bytes.length);
+                    remaining -= bytes.length;
+                    if (Arrays.equals(name, bytes)) {
+                        if (!exact || nameLength == bytes.length) {
+                            return true;
+                        }
+                        // 仅多出一个字节时，须为目录分隔符
+                        remaining--;
+                        if (is.read() == '/') {
+                            return true;
+                        }
+                    }
+                }
+                skipFully(is, remaining);
+            }
+        }
+        return false;
+    }
+
+
+    public ArchiveSource getSource() {
+        return source;
+    }
+
+
+    /**
+     * @return the number of entries declared by the end of central directory
+     *         record
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+
+    /**
+     * @return the position of the first record, or -1 if the archive is empty
+     */
+    public int firstRecord() {
+        return entryCount == 0 ? -1 : 0;
+    }
+
+
+    /**
+     * @return the position of the record following the one at {@code record},
+     *         or -1 if there are no more records
+     */
+    public int nextRecord(int record) {
+        int next = record + CEN_HEADER_LENGTH + getShort(records, record + 28) +
+                getShort(records, record + 30) + getShort(records, record + 32);
+        if (next + CEN_HEADER_LENGTH > records.length || getInt(records, next) != CEN_SIGNATURE) {
+            return -1;
+        }
+        return next;
+    }
+
+
+    public String getName(int record) {
+        return new String(records, record + CEN_HEADER_LENGTH, getNameLength(record),
+                StandardCharsets.UTF_8);
+    }
+
+
+    public int getNameLength(int record) {
+        return getShort(records, record + 28);
+    }
+
+
+    /**
+     * Copies the raw UTF-8 bytes of the record's name into {@code dest}.
+     */
+    public void copyName(int record, byte[] dest, int destPos) {
+        System.arraycopy(records, record + CEN_HEADER_LENGTH, dest, destPos, getNameLength(record));
+    }
+
+
+    public boolean nameEquals(int record, byte[] name) {
+        return getNameLength(record) == name.length && regionMatches(record, name);
+    }
+
+
+    public boolean nameStartsWith(int record, byte[] prefix) {
+        return getNameLength(record) >= prefix.length && regionMatches(record, prefix);
+    }
+
+
+    public int getMethod(int record) {
+        return getShort(records, record + 10);
+    }
+
+
+    public long getDosTime(int record) {
+        return getUnsignedInt(records, record + 12);
+    }
+
+
+    public long getCrc(int record) {
+        return getUnsignedInt(records, record + 16);
+    }
+
+
+    public long getCompressedSize(int record) {
+        long value = getUnsignedInt(records, record + 20);
+        if (value == ZIP64_MAGIC) {
+            value = getZip64Value(record, 1);
+        }
+        return value;
+    }
+
+
+    public long getSize(int record) {
+        long value = getUnsignedInt(records, record + 24);
+        if (value == ZIP64_MAGIC) {
+            value = getZip64Value(record, 0);
+        }
+        return value;
+    }
+
+
+    /**
+     * @return the offset of the entry's local header from the start of the
+     *         {@link #getSource() source}
+     */
+    public long getLocalHeaderOffset(int record) {
+        long value = getUnsignedInt(records, record + 42);
+        if (value == ZIP64_MAGIC) {
+            value = getZip64Value(record, 2);
+        }
+        return value + offsetDelta;
+    }
+
+
+    /**
+     * Finds the record for the given entry name with a linear scan.
+     *
+     * @return the record position or -1 if there is no such entry
+     */
+    public int findRecord(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        for (int record = firstRecord(); record >= 0; record = nextRecord(record)) {
+            if (nameEquals(record, bytes)) {
+                return record;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Reads the local header at {@code localHeaderOffset} to find where the
+     * entry's data starts.
+     *
+     * @throws IOException if the source cannot be read or the local header
+     *         is invalid
+     */
+    public static long getDataOffset(ArchiveSource source, long localHeaderOffset)
+            throws IOException {
+        byte[] loc = new byte[LOC_HEADER_LENGTH];
+        source.readFully(localHeaderOffset, loc, 0, LOC_HEADER_LENGTH);
+        if (getInt(loc, 0) != LOC_SIGNATURE) {
+            throw new ZipException("Invalid local header at offset " + localHeaderOffset);
+        }
+        return localHeaderOffset + LOC_HEADER_LENGTH + getShort(loc, 26) + getShort(loc, 28);
+    }
+
+
+    /**
+     * Opens the data of a single entry, inflating it if required. No other
+     * entry of the archive is read.
+     *
+     * @throws IOException if the source cannot be read or the compression
+     *         method is not supported
+     */
+    public static InputStream openEntry(ArchiveSource source, long localHeaderOffset,
+            int method, long compressedSize) throws IOException {
+        long dataOffset = getDataOffset(source, localHeaderOffset);
+        InputStream is = source.openStream(dataOffset, compressedSize);
+        if (method == ZipEntry.STORED) {
+            return is;
+        }
+        if (method == ZipEntry.DEFLATED) {
+            return new EntryInflaterInputStream(is);
+        }
+        is.close();
+        throw new ZipException("Unsupported compression method " + method);
+    }
+
+
+    private boolean regionMatches(int record, byte[] bytes) {
+        int start = record + CEN_HEADER_LENGTH;
+        for (int i = 0; i < bytes.length; i++) {
+            if (records[start + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private long getZip64Value(int record, int index) {
+        int extraStart = record + CEN_HEADER_LENGTH + getNameLength(record);
+        int extraEnd = extraStart + getShort(records, record + 30);
+        int pos = extraStart;
+        while (pos + 4 <= extraEnd) {
+            int id = getShort(records, pos);
+            int size = getShort(records, pos + 2);
+            if (id == ZIP64_EXTRA_ID) {
+                // Only the values that overflowed are present, in a fixed order
+                int valuePos = pos + 4;
+                if (getUnsignedInt(records, record + 24) == ZIP64_MAGIC) {
+                    if (index == 0) {
+                        return getLong(records, valuePos);
+                    }
+                    valuePos += 8;
+                }
+                if (getUnsignedInt(records, record + 20) == ZIP64_MAGIC) {
+                    if (index == 1) {
+                        return getLong(records, valuePos);
+                    }
+                    valuePos += 8;
+                }
+                return getLong(records, valuePos);
+            }
+            pos += 4 + size;
+        }
+        return ZIP64_MAGIC;
+    }
+
+
+    private static void readFully(InputStream is, byte[] b, int len) throws IOException {
+        int read = 0;
+        while (read < len) {
+            int n = is.read(b, read, len - read);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            read += n;
+        }
+    }
+
+
+    private static void skipFully(InputStream is, long n) throws IOException {
+        long remaining = n;
+        while (remaining > 0) {
+            long skipped = is.skip(remaining);
+            if (skipped <= 0) {
+                if (is.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+
+    /**
+     * Position and size of the central directory, read from the end of
+     * central directory record.
+     */
+    private static final class End {
+        private final long entries;
+        private final long cenSize;
+        private final long cenOffset;
+        private final long cenStart;
+
+        private End(long entries, long cenSize, long cenOffset, long cenStart) {
+            this.entries = entries;
+            this.cenSize = cenSize;
+            this.cenOffset = cenOffset;
+            this.cenStart = cenStart;
+        }
+
+        static End locate(ArchiveSource source) throws IOException {
+            long length = source.length();
+            if (length < EOCD_LENGTH) {
+                throw new ZipException("Archive too short to be a ZIP file");
+            }
+            // Most archives have no comment so try the shortest tail first
+            byte[] tail = new byte[EOCD_LENGTH];
+            long tailStart = length - EOCD_LENGTH;
+            source.readFully(tailStart, tail, 0, EOCD_LENGTH);
+            int eocd = 0;
+            if (getInt(tail, 0) != EOCD_SIGNATURE || getShort(tail, 20) != 0) {
+                int tailLength = (int) Math.min(length, EOCD_LENGTH + MAX_COMMENT_LENGTH);
+                tail = new byte[tailLength];
+                tailStart = length - tailLength;
+                source.readFully(tailStart, tail, 0, tailLength);
+                eocd = -1;
+                for (int i = tailLength - EOCD_LENGTH; i >= 0; i--) {
+                    if (getInt(tail, i) == EOCD_SIGNATURE &&
+                            i + EOCD_LENGTH + getShort(tail, i + 20) == tailLength) {
+                        eocd = i;
+                        break;
+                    }
+                }
+                if (eocd < 0) {
+                    throw new ZipException("End of central directory record not found");
+                }
+            }
+
+            long eocdPosition = tailStart + eocd;
+            long entries = getShort(tail, eocd + 10);
+            long cenSize = getUnsignedInt(tail, eocd + 12);
+            long cenOffset = getUnsignedInt(tail, eocd + 16);
+            long cenEnd = eocdPosition;
+
+            if (entries == 0xFFFF || cenSize == ZIP64_MAGIC || cenOffset == ZIP64_MAGIC) {
+                long locator = eocdPosition - ZIP64_LOCATOR_LENGTH;
+                if (locator >= 0) {
+                    byte[] buf = new byte[ZIP64_LOCATOR_LENGTH];
+                    source.readFully(locator, buf, 0, buf.length);
+                    if (getInt(buf, 0) == ZIP64_LOCATOR_SIGNATURE) {
+                        long zip64Eocd = getLong(buf, 8);
+                        buf = new byte[ZIP64_EOCD_LENGTH];
+                        source.readFully(zip64Eocd, buf, 0, buf.length);
+                        if (getInt(buf, 0) != ZIP64_EOCD_SIGNATURE) {
+                            throw new ZipException("Invalid ZIP64 end of central directory record");
+                        }
+                        entries = getLong(buf, 32);
+                        cenSize = getLong(buf, 40);
+                        cenOffset = getLong(buf, 48);
+                        cenEnd = locator;
+                    }
+                }
+            }
+
+            if (cenSize > Integer.MAX_VALUE || entries > Integer.MAX_VALUE) {
+                throw new ZipException("Central directory too large");
+            }
+            long cenStart = cenEnd - cenSize;
+            if (cenStart < 0) {
+                throw new ZipException("Invalid central directory size");
+            }
+            return new End(entries, cenSize, cenOffset, cenStart);
+        }
+    }
+
+
+    static int getShort(byte[] b, int off) {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8);
+    }
+
+
+    static int getInt(byte[] b, int off) {
+        return getShort(b, off) | (getShort(b, off + 2) << 16);
+    }
+
+
+    static long getUnsignedInt(byte[] b, int off) {
+        return getInt(b, off) & 0xFFFFFFFFL;
+    }
+
+
+    static long getLong(byte[] b, int off) {
+        return getUnsignedInt(b, off) | (getUnsignedInt(b, off + 4) << 32);
+    }
+
+
+    /**
+     * Inflates raw DEFLATE data and releases the native inflater on close.
+     */
+    private static final class EntryInflaterInputStream extends InflaterInputStream {
+
+        private boolean eof = false;
+        private boolean ended = false;
+
+        EntryInflaterInputStream(InputStream in) {
+            super(in, new Inflater(true), 8192);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof) {
+                throw new EOFException("Unexpected end of ZLIB input stream");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                // The nowrap inflater may need one extra byte to finish
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!ended) {
+                ended = true;
+                inf.end();
+            }
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.tt.nested.tools;
+
+import com.tt.nested.ByteArrayArchiveSource;
+import com.tt.nested.NestedJarIndex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Build step run after the ark-biz repackage. Writes a
+ * {@link NestedJarIndex} sidecar for every {@code lib/*.jar} of the biz JAR
+ * so that the runtime can list a nested JAR without inflating it.
+ * <p>
+ * The biz JAR is rewritten in place. STORED entries stay STORED so that
+ * nested JARs can still be read at their absolute offset.
+ */
+public final class ArkBizIndexer {
+
+    private static final String LIB_PREFIX = "lib/";
+    private static final String JAR_SUFFIX = ".jar";
+
+    private ArkBizIndexer() {
+    }
+
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: ArkBizIndexer <ark-biz.jar>...");
+            System.exit(1);
+        }
+        for (String arg : args) {
+            Path bizJar = Paths.get(arg);
+            int count = index(bizJar);
+            System.out.println("Indexed " + count + " nested JARs in " + bizJar);
+        }
+    }
+
+
+    /**
+     * Adds, or replaces, the sidecar index of every nested library JAR.
+     *
+     * @param bizJar    The ark-biz JAR to rewrite
+     *
+     * @return the number of nested JARs indexed
+     *
+     * @throws IOException if the JAR cannot be read or rewritten
+     */
+    public static int index(Path bizJar) throws IOException {
+        Path temp = Files.createTempFile(bizJar.toAbsolutePath().getParent(),
+                bizJar.getFileName().toString(), ".tmp");
+        try {
+            int count;
+            try (ZipFile zipFile = new ZipFile(bizJar.toFile());
+                    OutputStream os = Files.newOutputStream(temp);
+                    ZipOutputStream zos = new ZipOutputStream(os)) {
+                Map<String,byte[]> sidecars = new LinkedHashMap<>();
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    String name = entry.getName();
+                    if (name.startsWith(NestedJarIndex.SIDECAR_PREFIX)) {
+                        // 旧索引丢弃，重新生成
+                        continue;
+                    }
+                    byte[] content;
+                    try (InputStream is = zipFile.getInputStream(entry)) {
+                        content = is.readAllBytes();
+                    }
+                    if (isLibraryJar(entry)) {
+                        sidecars.put(NestedJarIndex.getSidecarName(name),
+                                createSidecar(content, entry.getSize(), entry.getCrc()));
+                    }
+                    zos.putNextEntry(copyOf(entry, content));
+                    zos.write(content);
+                    zos.closeEntry();
+                }
+                for (Map.Entry<String,byte[]> sidecar : sidecars.entrySet()) {
+                    zos.putNextEntry(new ZipEntry(sidecar.getKey()));
+                    zos.write(sidecar.getValue());
+                    zos.closeEntry();
+                }
+                count = sidecars.size();
+            }
+            Files.move(temp, bizJar, StandardCopyOption.REPLACE_EXISTING);
+            return count;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+
+    private static boolean isLibraryJar(ZipEntry entry) {
+        String name = entry.getName();
+        return !entry.isDirectory() && name.startsWith(LIB_PREFIX) && name.endsWith(JAR_SUFFIX)
+                && name.indexOf('/', LIB_PREFIX.length()) < 0;
+    }
+
+
+    private static byte[] createSidecar(byte[] jar, long size, long crc) throws IOException {
+        NestedJarIndex index = NestedJarIndex.buildWithManifest(new ByteArrayArchiveSource(jar));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeSidecar(bytes, size, crc);
+        return bytes.toByteArray();
+    }
+
+
+    private static ZipEntry copyOf(ZipEntry entry, byte[] content) {
+        ZipEntry copy = new ZipEntry(entry.getName());
+        copy.setTime(entry.getTime());
+        if (entry.getComment() != null) {
+            copy.setComment(entry.getComment());
+        }
+        if (entry.getExtra() != null) {
+            copy.setExtra(entry.getExtra());
+        }
+        if (entry.getMethod() == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            copy.setMethod(ZipEntry.STORED);
+            copy.setSize(content.length);
+            copy.setCompressedSize(content.length);
+            copy.setCrc(crc.getValue());
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,115 @@
+package com.tt.nested.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Build step run before a JAR is packaged. Writes a gzip compressed
+ * {@code .gz} sibling next to every compressible static resource, so that it
+ * can be served to clients that accept gzip without compressing it on every
+ * response.
+ * <p>
+ * Siblings that would not be smaller than the resource are not written and
+ * siblings left over by a previous build are replaced.
+ */
+public final class StaticResourceCompressor {
+
+    public static final String GZIP_SUFFIX = ".gz";
+
+    /**
+     * Extensions of the resources that are compressed. Raster images, WOFF
+     * fonts and media are compressed already.
+     */
+    static final Set<String> EXTENSIONS = new HashSet<>(Arrays.asList(
+            "js", "mjs", "css", "map", "html", "htm", "json", "svg", "txt", "xml", "ttf", "eot", "wasm"));
+
+    // 小于一个 TCP 报文的资源压缩收益不明显
+    static final int MIN_SIZE = 1024;
+
+    private StaticResourceCompressor() {
+    }
+
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: StaticResourceCompressor <directory>...");
+            System.exit(1);
+        }
+        for (String arg : args) {
+            Path directory = Paths.get(arg);
+            if (!Files.isDirectory(directory)) {
+                System.out.println("Skipped " + directory + ", not a directory");
+                continue;
+            }
+            int count = compress(directory);
+            System.out.println("Compressed " + count + " static resources in " + directory);
+        }
+    }
+
+
+    /**
+     * Writes the {@code .gz} sibling of every compressible resource under a
+     * directory.
+     *
+     * @param directory The directory to process recursively
+     *
+     * @return the number of siblings written
+     *
+     * @throws IOException if a resource cannot be read or its sibling cannot
+     *         be written
+     */
+    public static int compress(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(directory)) {
+            files = stream.filter(Files::isRegularFile).filter(StaticResourceCompressor::isCompressible)
+                    .collect(Collectors.toList());
+        }
+        int count = 0;
+        for (Path file : files) {
+            Path sibling = file.resolveSibling(file.getFileName() + GZIP_SUFFIX);
+            byte[] content = Files.readAllBytes(file);
+            byte[] compressed = content.length < MIN_SIZE ? null : gzip(content);
+            if (compressed != null && compressed.length < content.length) {
+                Files.write(sibling, compressed);
+                // 与原文件时间一致，避免 Last-Modified 因构建时间不同而不同
+                Files.setLastModifiedTime(sibling, Files.getLastModifiedTime(file));
+                count++;
+            } else {
+                Files.deleteIfExists(sibling);
+            }
+        }
+        return count;
+    }
+
+
+    static boolean isCompressible(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ENGLISH));
+    }
+
+
+    static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(content);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,124 @@
+package com.tt.nested;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.zip.ZipEntry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactEntryTableTests {
+
+    @Test
+    void looksUpEntriesByName() {
+        CompactEntryTable table = CompactEntryTable.builder(0)
+                .add("META-INF/resources/index.jsp", null, ZipEntry.DEFLATED, 0x1234L, 10, 20, 300, 0)
+                .add("META-INF/", null, ZipEntry.STORED, 0, 0, 0, 0, 0)
+                .add("META-INF/resources/zh/首页.jsp", null, ZipEntry.STORED, 0x5678L, 5, 5, 400, 0)
+                .build();
+
+        assertThat(table).hasSize(3);
+        assertThat(table.keySet()).containsExactly("META-INF/", "META-INF/resources/index.jsp",
+                "META-INF/resources/zh/首页.jsp");
+        int slot = table.indexOf("META-INF/resources/index.jsp");
+        assertThat(table.getLocalHeaderOffset(slot)).isEqualTo(300);
+        assertThat(table.getCrc(slot)).isEqualTo(0x1234L);
+        JarEntry entry = table.get("META-INF/resources/zh/首页.jsp");
+        assertThat(entry.getName()).isEqualTo("META-INF/resources/zh/首页.jsp");
+        assertThat(entry.getSize()).isEqualTo(5);
+        assertThat(table.get("META-INF/resources/missing.jsp")).isNull();
+        assertThat(table.containsKey("META-INF")).isFalse();
+    }
+
+    @Test
+    void filterRejectsMostMissesWithoutFalseNegatives() {
+        CompactEntryTable.Builder builder = CompactEntryTable.builder(0);
+        for (int i = 0; i < 5000; i++) {
+            builder.add("META-INF/resources/static/" + i + ".js", null, ZipEntry.STORED, i, 1, 1, i, 0);
+        }
+        builder.add("META-INF/resources/zh/首页.jsp", null, ZipEntry.STORED, 0, 1, 1, 0, 0);
+        CompactEntryTable table = builder.build();
+
+        for (int i = 0; i < 5000; i++) {
+            assertThat(table.mightContain("META-INF/resources/static/" + i + ".js")).isTrue();
+        }
+        assertThat(table.mightContain("META-INF/resources/zh/首页.jsp")).isTrue();
+        int falsePositives = 0;
+        for (int i = 0; i < 5000; i++) {
+            if (table.mightContain("META-INF/resources/static/" + i + ".css")) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(150);
+        assertThat(table.get("META-INF/resources/static/1.css")).isNull();
+    }
+
+    @Test
+    void listsChildrenOfDirectory() {
+        CompactEntryTable.Builder builder = CompactEntryTable.builder(0);
+        for (String name : new String[] { "META-INF/resources/", "META-INF/resources/index.jsp",
+                "META-INF/resources/css/", "META-INF/resources/css/site.css", "META-INF/resources/css/print/a.css",
+                "META-INF/resources/js/app.js", "META-INF/resources/js/lib/b.js", "META-INF/resources/js-app.js",
+                "META-INF/resources/zh/首页.jsp", "META-INF/resourcesX/other.js" }) {
+            builder.add(name, null, ZipEntry.STORED, 0, 1, 1, 0, 0);
+        }
+        CompactEntryTable table = builder.build();
+
+        assertThat(table.listChildren("META-INF/resources/", true))
+                .containsExactly("css/", "index.jsp", "js-app.js", "js/", "zh/");
+        // js/ 与 zh/ 没有自己的条目
+        assertThat(table.listChildren("META-INF/resources/", false))
+                .containsExactly("css/", "index.jsp", "js-app.js");
+        assertThat(table.listChildren("META-INF/resources/css/", true)).containsExactly("print/", "site.css");
+        assertThat(table.listChildren("META-INF/resources/zh/", true)).containsExactly("首页.jsp");
+        assertThat(table.listChildren("", true)).containsExactly("META-INF/");
+        assertThat(table.listChildren("META-INF/resources/missing/", true)).isEmpty();
+    }
+
+    @Test
+    void keepsLastOfDuplicateNames() {
+        CompactEntryTable table = CompactEntryTable.builder(1)
+                .add("a.jsp", null, ZipEntry.STORED, 1, 1, 1, 100, 0)
+                .add("b.jsp", null, ZipEntry.STORED, 2, 2, 2, 200, 0)
+                .add("a.jsp", null, ZipEntry.STORED, 3, 3, 3, 300, 0)
+                .build();
+
+        assertThat(table).hasSize(2);
+        assertThat(table.getLocalHeaderOffset(table.indexOf("a.jsp"))).isEqualTo(300);
+    }
+
+    @Test
+    void copiesMultiReleaseAliases() {
+        Map<String,JarEntry> entries = new HashMap<>();
+        JarEntry versioned = new JarEntry("META-INF/versions/11/a.jsp");
+        versioned.setSize(7);
+        entries.put("a.jsp", versioned);
+        entries.put("b.jsp", new JarEntry("b.jsp"));
+
+        CompactEntryTable table = CompactEntryTable.copyOf(entries);
+
+        assertThat(table.get("a.jsp").getName()).isEqualTo("META-INF/versions/11/a.jsp");
+        assertThat(table.get("a.jsp").getSize()).isEqualTo(7);
+        assertThat(table.get("b.jsp").getName()).isEqualTo("b.jsp");
+        assertThat(table.get("b.jsp").getSize()).isEqualTo(-1);
+        assertThat(table.getLocalHeaderOffset(table.indexOf("b.jsp"))).isEqualTo(CompactEntryTable.UNKNOWN);
+    }
+
+    @Test
+    void estimatesHeapSizeFromEntries() {
+        CompactEntryTable.Builder small = CompactEntryTable.builder(0);
+        CompactEntryTable.Builder large = CompactEntryTable.builder(0);
+        for (int i = 0; i < 1000; i++) {
+            large.add("META-INF/resources/" + i + ".jsp", null, ZipEntry.STORED, i, 1, 1, i, 0);
+            if (i < 10) {
+                small.add("META-INF/resources/" + i + ".jsp", null, ZipEntry.STORED, i, 1, 1, i, 0);
+            }
+        }
+
+        long largeSize = large.build().estimateHeapSize();
+        assertThat(largeSize).isGreaterThan(1000 * (5 * 8 + 4 + 2 + 20));
+        assertThat(largeSize).isGreaterThan(small.build().estimateHeapSize() * 50);
+    }
+}
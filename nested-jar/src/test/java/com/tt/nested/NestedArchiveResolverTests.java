@@ -0,0 +1,70 @@
+package com.tt.nested;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NestedArchiveResolverTests {
+
+    private static final String BIZ_PATH = "BOOT-INF/classes/SOFA-ARK/biz/module-ark-biz.jar";
+    private static final String LIB_PATH = "lib/module-support.jar";
+    private static final String JSP = "META-INF/resources/views/support-page.jsp";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void resolvesStoredLayersToAbsoluteOffset() throws IOException {
+        Path base = createBaseJar(true);
+
+        FileArchiveSource source = NestedArchiveResolver.resolve(base, BIZ_PATH + "!/" + LIB_PATH);
+
+        assertThat(source).isNotNull();
+        assertThat(source.getOffset()).isPositive();
+        assertThat(source.getCrc()).isNotNegative();
+        NestedJarIndex index = NestedJarIndex.build(source);
+        try (InputStream is = index.getInputStream(source, JSP)) {
+            assertThat(new String(is.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("<p>support</p>");
+        }
+    }
+
+    @Test
+    void resolvesJarUrl() throws IOException {
+        Path base = createBaseJar(true);
+
+        FileArchiveSource source = NestedArchiveResolver.resolve(
+                new URL("jar:" + base.toUri() + "!/" + BIZ_PATH + "!/" + LIB_PATH + "!/"));
+
+        assertThat(source).isNotNull();
+        assertThat(NestedJarIndex.build(source).getEntry(JSP)).isNotNull();
+    }
+
+    @Test
+    void compressedLayerCannotBeResolved() throws IOException {
+        Path base = createBaseJar(false);
+
+        assertThat(NestedArchiveResolver.resolve(base, BIZ_PATH + "!/" + LIB_PATH)).isNull();
+    }
+
+    private Path createBaseJar(boolean storedBiz) throws IOException {
+        byte[] lib = jar(JSP, "<p>support</p>".getBytes(StandardCharsets.UTF_8), false);
+        byte[] biz = jar(LIB_PATH, lib, true);
+        return Files.write(tempDir.resolve("base.jar"), jar(BIZ_PATH, biz, storedBiz));
+    }
+
+    private static byte[] jar(String name, byte[] content, boolean stored) throws IOException {
+        TestJars.Builder jar = TestJars.jar();
+        for (int i = 0; i < 100; i++) {
+            jar.put("filler/" + i + ".txt", "filler " + i);
+        }
+        return (stored ? jar.putStored(name, content) : jar.put(name, content)).toBytes();
+    }
+}
@@ -0,0 +1,97 @@
+package com.tt.nested;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NestedContentCacheTests {
+
+    @Test
+    void evictsLeastRecentlyUsedEntryOfSameBiz() {
+        NestedContentCache cache = new NestedContentCache(1000, 300, 100);
+        cache.put("biz-a", "lib/a.jar", "a1", new byte[100]);
+        cache.put("biz-a", "lib/a.jar", "a2", new byte[100]);
+        cache.put("biz-b", "lib/b.jar", "b1", new byte[100]);
+        cache.put("biz-a", "lib/a.jar", "a3", new byte[100]);
+        cache.get("biz-a", "lib/a.jar", "a1");
+
+        cache.put("biz-a", "lib/a.jar", "a4", new byte[100]);
+
+        assertThat(cache.get("biz-a", "lib/a.jar", "a2")).isNull();
+        assertThat(cache.get("biz-a", "lib/a.jar", "a1")).isNotNull();
+        assertThat(cache.get("biz-b", "lib/b.jar", "b1")).isNotNull();
+        assertThat(cache.getSize("biz-a")).isEqualTo(300);
+        assertThat(cache.getSize()).isEqualTo(400);
+    }
+
+    @Test
+    void evictsAcrossBizWhenGlobalLimitIsReached() {
+        NestedContentCache cache = new NestedContentCache(200, 200, 100);
+        cache.put("biz-a", "lib/a.jar", "a1", new byte[100]);
+        cache.put("biz-b", "lib/b.jar", "b1", new byte[100]);
+        cache.put("biz-c", "lib/c.jar", "c1", new byte[100]);
+
+        assertThat(cache.get("biz-a", "lib/a.jar", "a1")).isNull();
+        assertThat(cache.getSize()).isEqualTo(200);
+        assertThat(cache.getSize("biz-a")).isZero();
+    }
+
+    @Test
+    void skipsEntriesLargerThanMaxObjectSize() {
+        NestedContentCache cache = new NestedContentCache(1000, 1000, 100);
+
+        assertThat(cache.put("biz-a", "lib/a.jar", "big", new byte[101])).isFalse();
+        assertThat(cache.getSize()).isZero();
+    }
+
+    @Test
+    void disabledWithoutGlobalLimit() {
+        NestedContentCache cache = new NestedContentCache(0, 0, 100);
+
+        assertThat(cache.isEnabled()).isFalse();
+        assertThat(cache.put("biz-a", "lib/a.jar", "a1", new byte[1])).isFalse();
+    }
+
+    @Test
+    void staysWithinLimitsUnderConcurrentUse() throws Exception {
+        NestedContentCache cache = new NestedContentCache(2000, 800, 100);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                String biz = "biz-" + (t % 4);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        String name = "e" + (i % 50);
+                        if (cache.get(biz, "lib/a.jar", name) == null) {
+                            cache.put(biz, "lib/a.jar", name, new byte[10 + i % 91]);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long sizeOfBiz0 = cache.getSize("biz-0");
+        long total = 0;
+        for (int b = 0; b < 4; b++) {
+            assertThat(cache.getSize("biz-" + b)).isLessThanOrEqualTo(800);
+            total += cache.getSize("biz-" + b);
+        }
+        assertThat(cache.getSize()).isEqualTo(total).isPositive().isLessThanOrEqualTo(2000);
+        cache.removeBiz("biz-0");
+        assertThat(cache.getSize("biz-0")).isZero();
+        assertThat(cache.getSize()).isEqualTo(total - sizeOfBiz0);
+    }
+}
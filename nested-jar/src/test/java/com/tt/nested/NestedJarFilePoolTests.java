@@ -0,0 +1,89 @@
+package com.tt.nested;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.jar.JarFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NestedJarFilePoolTests {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void sharesHandleUntilIdle() throws IOException {
+        String jar = createJar().toString();
+        NestedJarFilePool pool = new NestedJarFilePool(0);
+
+        JarFile first = pool.acquire(jar, "");
+        JarFile second = pool.acquire(jar, "");
+        assertThat(second).isSameAs(first);
+
+        pool.release(jar, "");
+        pool.evictIdle();
+        assertThat(pool.size()).isEqualTo(1);
+
+        pool.release(jar, "");
+        pool.evictIdle();
+        assertThat(pool.size()).isZero();
+        assertThat(pool.acquire(jar, "")).isNotSameAs(first);
+    }
+
+    @Test
+    void reportsUseCountOfOpenHandle() throws IOException {
+        String jar = createJar().toString();
+        String key = NestedJarFilePool.getKey(jar, "");
+        NestedJarFilePool pool = new NestedJarFilePool(0);
+        assertThat(pool.getUseCount(key)).isEqualTo(-1);
+
+        pool.acquire(jar, "");
+        pool.acquire(jar, "");
+        assertThat(pool.getUseCount(key)).isEqualTo(2);
+
+        pool.release(jar, "");
+        pool.release(jar, "");
+        assertThat(pool.getUseCount(key)).isZero();
+        pool.evictIdle();
+        assertThat(pool.getUseCount(key)).isEqualTo(-1);
+    }
+
+    @Test
+    void releaseAllClosesHandleOnceLastUserReleases() throws IOException {
+        String jar = createJar().toString();
+        NestedJarFilePool pool = new NestedJarFilePool(60_000);
+
+        JarFile jarFile = pool.acquire(jar, "");
+        assertThat(pool.releaseAll(NestedJarFilePool.getKey(tempDir.toUri().toURL()))).isZero();
+        assertThat(pool.releaseAll(NestedJarFilePool.getKey(jar, ""))).isEqualTo(1);
+        assertThat(jarFile.getEntry("index.html")).isNotNull();
+
+        pool.release(jar, "");
+        assertThat(pool.size()).isZero();
+    }
+
+    @Test
+    void sharesChannelUntilReleasedWithBiz() throws IOException {
+        Path jar = createJar();
+        String key = NestedJarFilePool.getKey(jar.toString(), "");
+        NestedJarFilePool pool = new NestedJarFilePool(60_000);
+
+        FileChannel first = pool.acquireChannel(key, jar);
+        assertThat(pool.acquireChannel(key, jar)).isSameAs(first);
+        pool.releaseChannel(key);
+        assertThat(pool.releaseAll(key)).isEqualTo(1);
+        assertThat(first.isOpen()).isTrue();
+
+        pool.releaseChannel(key);
+        assertThat(first.isOpen()).isFalse();
+        assertThat(pool.size()).isZero();
+    }
+
+    private Path createJar() throws IOException {
+        return TestJars.jar().put("index.html", "").write(tempDir.resolve("module-ark-biz.jar"));
+    }
+}
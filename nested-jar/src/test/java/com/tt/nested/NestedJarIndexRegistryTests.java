@@ -0,0 +1,125 @@
+package com.tt.nested;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.tt.nested.TestJars.SUPPORT_JAR;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class NestedJarIndexRegistryTests {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void sharesIndexOfSameJarAcrossBizs() throws IOException {
+        byte[] support = createSupportJar("shared");
+        FileArchiveSource first = NestedArchiveResolver.resolve(createBizJar("first", support), SUPPORT_JAR);
+        FileArchiveSource second = NestedArchiveResolver.resolve(createBizJar("second", support), SUPPORT_JAR);
+        NestedJarIndexRegistry registry = new NestedJarIndexRegistry();
+        AtomicInteger builds = new AtomicInteger();
+
+        NestedJarIndex firstIndex = acquire(registry, first, builds);
+        NestedJarIndex secondIndex = acquire(registry, second, builds);
+
+        assertThat(secondIndex).isSameAs(firstIndex);
+        assertThat(builds).hasValue(1);
+        assertThat(registry.getReferences(SUPPORT_JAR, first.length(), first.getCrc())).isEqualTo(2);
+        // 偏移量相对于嵌套 jar 自身，对每个模块中的副本都有效
+        try (InputStream is = secondIndex.getInputStream(second, "META-INF/resources/app.js")) {
+            assertThat(new String(is.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("shared");
+        }
+
+        registry.release(SUPPORT_JAR, first.length(), first.getCrc());
+        assertThat(registry.size()).isEqualTo(1);
+        registry.release(SUPPORT_JAR, second.length(), second.getCrc());
+        assertThat(registry.size()).isZero();
+    }
+
+    @Test
+    void keepsDifferentContentApart() throws IOException {
+        FileArchiveSource first = NestedArchiveResolver.resolve(
+                createBizJar("first", createSupportJar("one")), SUPPORT_JAR);
+        FileArchiveSource second = NestedArchiveResolver.resolve(
+                createBizJar("second", createSupportJar("other")), SUPPORT_JAR);
+        NestedJarIndexRegistry registry = new NestedJarIndexRegistry();
+        AtomicInteger builds = new AtomicInteger();
+
+        assertThat(acquire(registry, second, builds)).isNotSameAs(acquire(registry, first, builds));
+        assertThat(builds).hasValue(2);
+        assertThat(registry.size()).isEqualTo(2);
+    }
+
+    @Test
+    void buildsOnceForConcurrentBizs() throws Exception {
+        FileArchiveSource source = NestedArchiveResolver.resolve(
+                createBizJar("biz", createSupportJar("shared")), SUPPORT_JAR);
+        NestedJarIndexRegistry registry = new NestedJarIndexRegistry();
+        AtomicInteger builds = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<NestedJarIndex>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return acquire(registry, source, builds);
+                }));
+            }
+            start.countDown();
+            NestedJarIndex index = futures.get(0).get();
+            for (Future<NestedJarIndex> future : futures) {
+                assertThat(future.get()).isSameAs(index);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(builds).hasValue(1);
+        assertThat(registry.getReferences(SUPPORT_JAR, source.length(), source.getCrc())).isEqualTo(8);
+    }
+
+    @Test
+    void doesNotKeepFailedBuilds() throws IOException {
+        NestedJarIndexRegistry registry = new NestedJarIndexRegistry();
+
+        assertThatThrownBy(() -> registry.acquire(SUPPORT_JAR, 10, 20, () -> {
+            throw new IOException("broken");
+        })).isInstanceOf(IOException.class);
+        assertThat(registry.size()).isZero();
+
+        NestedJarIndex index = NestedJarIndex.build(new ByteArrayArchiveSource(createSupportJar("retry")));
+        assertThat(registry.acquire(SUPPORT_JAR, 10, 20, () -> index)).isSameAs(index);
+    }
+
+    private static NestedJarIndex acquire(NestedJarIndexRegistry registry, FileArchiveSource source,
+            AtomicInteger builds) throws IOException {
+        return registry.acquire(SUPPORT_JAR, source.length(), source.getCrc(), () -> {
+            builds.incrementAndGet();
+            return NestedJarIndex.buildWithManifest(source);
+        });
+    }
+
+    private static byte[] createSupportJar(String content) throws IOException {
+        return TestJars.jar().putStored("META-INF/resources/app.js", content).toBytes();
+    }
+
+    private Path createBizJar(String name, byte[] support) throws IOException {
+        return TestJars.jar()
+                .putStored("classes/" + name + ".properties", name)
+                .putStored(SUPPORT_JAR, support)
+                .write(tempDir.resolve(name + "-ark-biz.jar"));
+    }
+}
@@ -0,0 +1,95 @@
+package com.tt.nested;
+
+import com.tt.nested.tools.ArkBizIndexer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NestedJarIndexTests {
+
+    private static final int ENTRIES = 3000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void readsEntriesAnywhereInNestedJar() throws IOException {
+        Path outer = createOuterJar(createInnerJar());
+        try (JarFile jarFile = new JarFile(outer.toFile())) {
+            ArchiveSource source = new JarEntryArchiveSource(jarFile, jarFile.getJarEntry("lib/inner.jar"));
+            NestedJarIndex index = NestedJarIndex.build(source);
+
+            assertThat(index.size()).isEqualTo(ENTRIES + 2);
+            assertThat(read(index, source, "views/0.jsp")).isEqualTo(content(0));
+            assertThat(read(index, source, "views/1500.jsp")).isEqualTo(content(1500));
+            assertThat(read(index, source, "views/2999.jsp")).isEqualTo(content(2999));
+            assertThat(index.getInputStream(source, "views/missing.jsp")).isNull();
+        }
+    }
+
+    @Test
+    void loadsSidecarWrittenByArkBizIndexer() throws IOException {
+        Path outer = createOuterJar(createInnerJar());
+        ArkBizIndexer.index(outer);
+
+        FileArchiveSource container = new FileArchiveSource(outer, 0, Files.size(outer));
+        NestedJarIndex index = NestedJarIndex.loadSidecar(container, "lib/inner.jar");
+        assertThat(index).isNotNull();
+        assertThat(index.hasManifestInfo()).isTrue();
+        assertThat(index.getMultiRelease()).isFalse();
+        assertThat(index.getManifest()).isNotNull();
+        assertThat(index.toJarEntries()).hasSize(ENTRIES + 2)
+                .containsKeys(JarFile.MANIFEST_NAME, "views/", "views/2999.jsp");
+
+        FileArchiveSource inner = NestedArchiveResolver.resolve(outer, "lib/inner.jar");
+        assertThat(read(index, inner, "views/1500.jsp")).isEqualTo(content(1500));
+    }
+
+    @Test
+    void ignoresStaleSidecar() throws IOException {
+        NestedJarIndex index = NestedJarIndex.buildWithManifest(new ByteArrayArchiveSource(createInnerJar()));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeSidecar(bytes, 100, 0x12345678L);
+
+        assertThat(NestedJarIndex.readSidecar(new ByteArrayInputStream(bytes.toByteArray()), 100, 0x12345678L))
+                .isNotNull();
+        assertThat(NestedJarIndex.readSidecar(new ByteArrayInputStream(bytes.toByteArray()), 101, 0x12345678L))
+                .isNull();
+    }
+
+    private String read(NestedJarIndex index, ArchiveSource source, String name) throws IOException {
+        try (InputStream is = index.getInputStream(source, name)) {
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String content(int i) {
+        return "<p>support page " + i + "</p>";
+    }
+
+    private byte[] createInnerJar() throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        TestJars.Builder jar = TestJars.jar(manifest).directory("views/");
+        for (int i = 0; i < ENTRIES; i++) {
+            jar.put("views/" + i + ".jsp", content(i));
+        }
+        return jar.toBytes();
+    }
+
+    private Path createOuterJar(byte[] inner) throws IOException {
+        return TestJars.jar().putStored("lib/inner.jar", inner).write(tempDir.resolve("module-ark-biz.jar"));
+    }
+}
@@ -0,0 +1,90 @@
+package com.tt.nested;
+
+import com.tt.nested.NestedJarScanCache.ScannedJar;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.jar.Attributes;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NestedJarScanCacheTests {
+
+    @Test
+    void scanKeepsNamesManifestAndDescriptors() throws IOException {
+        ScannedJar scanned = scan(false);
+
+        assertThat(scanned.getEntries().keySet()).containsExactly("META-INF/resources/index.jsp",
+                "META-INF/support.tld", "META-INF/web-fragment.xml", "com/tt/Support.class");
+        assertThat(scanned.getManifest().getMainAttributes().getValue("Implementation-Title"))
+                .isEqualTo("support");
+        try (InputStream is = scanned.getDescriptor("META-INF/support.tld")) {
+            assertThat(new String(is.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("<taglib/>");
+        }
+        assertThat(scanned.getDescriptor("META-INF/web-fragment.xml")).isNotNull();
+        assertThat(scanned.getDescriptor("META-INF/resources/index.jsp")).isNull();
+        assertThat(scanned.isMultiRelease()).isFalse();
+    }
+
+    @Test
+    void detectsMultiReleaseJar() throws IOException {
+        assertThat(scan(true).isMultiRelease()).isTrue();
+    }
+
+    @Test
+    void sharesJarsByContentIdentity() throws IOException {
+        NestedJarScanCache cache = new NestedJarScanCache(2);
+        ScannedJar scanned = scan(false);
+        cache.put(100, 0x1234L, scanned);
+
+        assertThat(cache.get(100, 0x1234L)).isSameAs(scanned);
+        assertThat(cache.get(100, 0x5678L)).isNull();
+        assertThat(cache.get(101, 0x1234L)).isNull();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedJar() throws IOException {
+        NestedJarScanCache cache = new NestedJarScanCache(2);
+        cache.put(1, 1, scan(false));
+        cache.put(2, 2, scan(false));
+        cache.get(1, 1);
+
+        cache.put(3, 3, scan(false));
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get(1, 1)).isNotNull();
+        assertThat(cache.get(2, 2)).isNull();
+    }
+
+    @Test
+    void ignoresJarsOfUnknownIdentity() throws IOException {
+        NestedJarScanCache cache = new NestedJarScanCache(2);
+        cache.put(100, -1, scan(false));
+
+        assertThat(cache.size()).isZero();
+        assertThat(new NestedJarScanCache(0).isEnabled()).isFalse();
+    }
+
+    private static ScannedJar scan(boolean multiRelease) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Implementation-Title", "support");
+        if (multiRelease) {
+            manifest.getMainAttributes().put(Attributes.Name.MULTI_RELEASE, "true");
+        }
+        byte[] bytes = TestJars.jar(manifest)
+                .put("com/tt/Support.class", "class")
+                .put("META-INF/support.tld", "<taglib/>")
+                .put("META-INF/web-fragment.xml", "<web-fragment/>")
+                .put("META-INF/resources/index.jsp", "<p>index</p>")
+                .toBytes();
+        try (JarInputStream jar = new JarInputStream(new ByteArrayInputStream(bytes))) {
+            return ScannedJar.scan(jar);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.tt.nested;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NestedReleaseRegistryTests {
+
+    @Test
+    void matchesBizArchiveAndNestedArchives() {
+        assertThat(NestedReleaseRegistry.isWithin("/biz.jar", "/biz.jar")).isTrue();
+        assertThat(NestedReleaseRegistry.isWithin("/biz.jar!/lib/a.jar", "/biz.jar")).isTrue();
+        assertThat(NestedReleaseRegistry.isWithin("/biz.jar2", "/biz.jar")).isFalse();
+        assertThat(NestedReleaseRegistry.isWithin("/other.jar!/lib/a.jar", "/biz.jar")).isFalse();
+    }
+}
@@ -0,0 +1,102 @@
+package com.tt.nested;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * Builds the JARs read by the tests, in memory, with the entries in the order
+ * they are added.
+ */
+final class TestJars {
+
+    static final String SUPPORT_JAR = "lib/support.jar";
+
+    private TestJars() {
+    }
+
+    static Builder jar() throws IOException {
+        return new Builder(null);
+    }
+
+    static Builder jar(Manifest manifest) throws IOException {
+        return new Builder(manifest);
+    }
+
+    static long crc(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    static final class Builder {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private final JarOutputStream jar;
+
+        private Builder(Manifest manifest) throws IOException {
+            jar = manifest == null ? new JarOutputStream(bytes) : new JarOutputStream(bytes, manifest);
+        }
+
+        Builder directory(String name) throws IOException {
+            jar.putNextEntry(new JarEntry(name));
+            jar.closeEntry();
+            return this;
+        }
+
+        /**
+         * Adds a DEFLATED entry.
+         */
+        Builder put(String name, String content) throws IOException {
+            return put(name, content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Builder put(String name, byte[] content) throws IOException {
+            jar.putNextEntry(new JarEntry(name));
+            jar.write(content);
+            jar.closeEntry();
+            return this;
+        }
+
+        /**
+         * Adds a STORED entry, which a nested JAR has to be to be read in
+         * place.
+         */
+        Builder putStored(String name, String content) throws IOException {
+            return putStored(name, content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Builder putStored(String name, byte[] content) throws IOException {
+            JarEntry entry = new JarEntry(name);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            entry.setCrc(crc(content));
+            jar.putNextEntry(entry);
+            jar.write(content);
+            jar.closeEntry();
+            return this;
+        }
+
+        Builder comment(String comment) {
+            jar.setComment(comment);
+            return this;
+        }
+
+        byte[] toBytes() throws IOException {
+            jar.close();
+            return bytes.toByteArray();
+        }
+
+        Path write(Path file) throws IOException {
+            return Files.write(file, toBytes());
+        }
+    }
+}
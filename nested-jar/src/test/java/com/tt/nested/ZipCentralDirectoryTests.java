@@ -0,0 +1,76 @@
+package com.tt.nested;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZipCentralDirectoryTests {
+
+    private static final String RESOURCES = "META-INF/resources/";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void findsEntryWithPrefix() throws IOException {
+        Path jar = createJar("support.jar", null, "com/tt/Support.class",
+                "META-INF/resources/views/support-page.jsp");
+
+        assertThat(ZipCentralDirectory.hasEntryWithPrefix(source(jar), RESOURCES)).isTrue();
+    }
+
+    @Test
+    void findsEntryWithPrefixBehindArchiveComment() throws IOException {
+        Path jar = createJar("commented.jar", "built by test", "META-INF/resources/index.html");
+
+        assertThat(ZipCentralDirectory.hasEntryWithPrefix(source(jar), RESOURCES)).isTrue();
+    }
+
+    @Test
+    void ignoresShorterAndUnrelatedNames() throws IOException {
+        Path jar = createJar("plain.jar", null, "META-INF/", "META-INF/res", "com/tt/Plain.class");
+
+        assertThat(ZipCentralDirectory.hasEntryWithPrefix(source(jar), RESOURCES)).isFalse();
+    }
+
+    @Test
+    void findsEntryByNameOrDirectoryName() throws IOException {
+        Path jar = createJar("resources.jar", null, "META-INF/", "META-INF/resources/", "META-INF/resources/app.js");
+
+        assertThat(ZipCentralDirectory.hasEntry(source(jar), "META-INF/resources")).isTrue();
+        assertThat(ZipCentralDirectory.hasEntry(source(jar), "META-INF/resources/app.js")).isTrue();
+        assertThat(ZipCentralDirectory.hasEntry(source(jar), "META-INF/resources/app")).isFalse();
+    }
+
+    @Test
+    void doesNotTreatNestedEntriesAsDirectoryEntry() throws IOException {
+        Path jar = createJar("nodirs.jar", null, "META-INF/resources/app.js", "META-INF/resourcesX");
+
+        assertThat(ZipCentralDirectory.hasEntryWithPrefix(source(jar), RESOURCES)).isTrue();
+        assertThat(ZipCentralDirectory.hasEntry(source(jar), "META-INF/resources")).isFalse();
+    }
+
+    private FileArchiveSource source(Path jar) throws IOException {
+        return new FileArchiveSource(jar, 0, Files.size(jar));
+    }
+
+    private Path createJar(String name, String comment, String... entries) throws IOException {
+        TestJars.Builder jar = TestJars.jar();
+        for (String entry : entries) {
+            if (entry.endsWith("/")) {
+                jar.directory(entry);
+            } else {
+                jar.put(entry, entry);
+            }
+        }
+        if (comment != null) {
+            jar.comment(comment);
+        }
+        return jar.write(tempDir.resolve(name));
+    }
+}